@@ -0,0 +1,353 @@
+package net.i2p.i2pcontrol.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Message;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParseException;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Parser;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+import com.thetransactioncompany.jsonrpc2.server.Dispatcher;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.FileUtil;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+import net.i2p.i2pcontrol.I2PControlVersion;
+import net.i2p.i2pcontrol.security.SecurityManager;
+import net.i2p.i2pcontrol.servlets.configuration.ConfigurationManager;
+import net.i2p.i2pcontrol.servlets.jsonrpc2handlers.*;
+
+/**
+ * Bytes allocated per request, for each corpus request, checked against
+ * the budgets in bench/allocation-budgets.properties.
+ *
+ * Each request goes the servlet's way: bytes to String, JSONRPC2Parser with
+ * the servlet's settings, Dispatcher.process() against a SimulatedRouterFacade,
+ * and the response written out, to a Writer that drops it.
+ * Allocation is what com.sun.management.ThreadMXBean reports for this thread.
+ * After a warmup, the lowest of several rounds is taken, as JIT and
+ * GC noise only ever add to it. Slow methods get fewer requests,
+ * see MAX_WARMUP_TIME and MAX_ROUND_TIME.
+ *
+ * Exits with 1 if a method is over its budget or has none.
+ * With -update, writes the measured values plus HEADROOM as the new budgets
+ * instead, for when an increase is intended.
+ *
+ * Usage: AllocationBudget [-update] [-warmup n] [-rounds n] [-requests n] budgetfile
+ *
+ * @since 0.12
+ */
+public class AllocationBudget {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** the corpus placeholder */
+    private static final String TOKEN = "e4b0c2f1a9";
+    /** as the JSONRPC2Servlet defaults */
+    private static final int MAX_BYTES = 256 * 1024;
+    private static final int MAX_DEPTH = 32;
+    private static final int MAX_STRING_LENGTH = 32 * 1024;
+    private static final int MAX_MEMBERS = 4096;
+    /** of -update, over the measured value */
+    private static final double HEADROOM = 1.2;
+    /** -update rounds up to this */
+    private static final long ROUND = 64;
+    /** at most, per method, for slow ones as Authenticate */
+    private static final long MAX_WARMUP_TIME = 5*1000;
+    private static final long MAX_ROUND_TIME = 1000;
+    private static final int MIN_REQUESTS = 10;
+    /**
+     * RouterInfoHistory results grow as the history fills,
+     * so ask for a window this long that is already recorded
+     */
+    private static final long HISTORY_WINDOW = 10*1000;
+
+    private final com.sun.management.ThreadMXBean _threads;
+    private final long _thread;
+    /** _thread and the AuthenticateHandler workers, where the BCrypt runs */
+    private long[] _measured;
+    private final Writer _out = new NullWriter();
+    private Dispatcher _disp;
+
+    private AllocationBudget() {
+        _threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!_threads.isThreadAllocatedMemorySupported())
+            throw new UnsupportedOperationException("This JVM does not count allocated bytes per thread");
+        _threads.setThreadAllocatedMemoryEnabled(true);
+        _thread = Thread.currentThread().getId();
+        _measured = new long[] { _thread };
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean update = false;
+        int warmup = 2000;
+        int rounds = 5;
+        int requests = 1000;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("-update")) {
+                update = true;
+            } else if (a.startsWith("-") && i + 1 < args.length) {
+                String v = args[++i];
+                if (a.equals("-warmup"))
+                    warmup = Integer.parseInt(v);
+                else if (a.equals("-rounds"))
+                    rounds = Integer.parseInt(v);
+                else if (a.equals("-requests"))
+                    requests = Integer.parseInt(v);
+                else
+                    usage();
+            } else if (file == null && !a.startsWith("-")) {
+                file = a;
+            } else {
+                usage();
+            }
+        }
+        if (file == null || warmup < 0 || rounds <= 0 || requests <= 0)
+            usage();
+        File f = new File(file);
+        Properties budgets = new Properties();
+        if (f.exists()) {
+            InputStream in = new FileInputStream(f);
+            try {
+                budgets.load(in);
+            } finally {
+                in.close();
+            }
+        } else if (!update) {
+            System.err.println("No budget file " + f + ", create it with -update");
+            System.exit(1);
+        }
+
+        long[] measured = new AllocationBudget().measure(warmup, rounds, requests);
+
+        if (update) {
+            write(f, measured);
+            System.out.println("Budgets written to " + f);
+            System.exit(0);
+        }
+        boolean failed = false;
+        System.out.println(String.format("%-20s %12s %12s", "Method", "Bytes/req", "Budget"));
+        for (int i = 0; i < Corpus.METHODS.length; i++) {
+            String m = Corpus.METHODS[i];
+            String b = budgets.getProperty(m);
+            String status;
+            if (b == null) {
+                status = "NO BUDGET";
+                failed = true;
+            } else if (measured[i] > Long.parseLong(b.trim())) {
+                status = "OVER BUDGET";
+                failed = true;
+            } else {
+                status = "ok";
+            }
+            System.out.println(String.format("%-20s %12d %12s  %s", m, measured[i], b != null ? b.trim() : "-", status));
+        }
+        if (failed) {
+            System.out.println("Allocation budgets exceeded, see " + f +
+                               "\nIf the increase is intended, run with -update and check in the new budgets.");
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: AllocationBudget [-update] [-warmup n] [-rounds n] [-requests n] budgetfile\n" +
+                           "  defaults: -warmup 2000 -rounds 5 -requests 1000\n" +
+                           "  -update writes the measured values plus " + Math.round((HEADROOM - 1) * 100) +
+                           "% as the new budgets");
+        System.exit(1);
+    }
+
+    /**
+     * @return bytes per request, in Corpus.METHODS order
+     */
+    private long[] measure(int warmup, int rounds, int requests) throws Exception {
+        I2PAppContext ctx = I2PAppContext.getGlobalContext();
+        File dir = new File(System.getProperty("java.io.tmpdir"), "i2pcontrol-alloc-" + ctx.random().nextLong());
+        dir.mkdirs();
+        ConfigurationManager conf = new ConfigurationManager(ctx, dir, true);
+        SecurityManager secMan = new SecurityManager(ctx, null, conf);
+        JSONRPC2Helper helper = new JSONRPC2Helper(secMan);
+        RouterFacade router = new SimulatedRouterFacade(ctx);
+        ConfigVersions configVersions = new ConfigVersions(router);
+        GetRateHandler getRate = new GetRateHandler(helper, conf);
+        RouterInfoHandler routerInfo = new RouterInfoHandler(router, helper);
+        RouterManagerHandler routerManager = new RouterManagerHandler(router, helper);
+        _disp = new Dispatcher();
+        _disp.register(new EchoHandler(helper));
+        _disp.register(getRate);
+        AuthenticateHandler authenticate = new AuthenticateHandler(helper, secMan, conf);
+        _disp.register(authenticate);
+        _disp.register(new NetworkSettingHandler(router, helper, configVersions));
+        _disp.register(routerInfo);
+        _disp.register(new NetDbHandler(router, helper));
+        _disp.register(routerManager);
+        _disp.register(new I2PControlHandler(router, helper, secMan));
+        _disp.register(new AdvancedSettingsHandler(router, helper, configVersions));
+        try {
+            String token = secMan.validatePasswd(SecurityManager.DEFAULT_AUTH_PASSWORD).getId();
+            long[] rv = new long[Corpus.METHODS.length];
+            for (int i = 0; i < rv.length; i++) {
+                String m = Corpus.METHODS[i];
+                String json = Corpus.get(m + ".request").replace(TOKEN, token);
+                if (m.equals("RouterInfoHistory"))
+                    json = historyWindow(json, ctx, router);
+                byte[] body = json.getBytes(UTF8);
+                JSONRPC2Response resp = process(body);
+                if (resp == null || !resp.indicatesSuccess())
+                    throw new IllegalStateException(m + " failed: " + resp);
+                long start = System.nanoTime();
+                int done = 1;
+                long elapsed;
+                do {
+                    process(body);
+                    done++;
+                    elapsed = (System.nanoTime() - start) / 1000000;
+                } while (done < warmup && elapsed < MAX_WARMUP_TIME);
+                findThreads();
+                long overhead = overhead();
+                int n = (int) Math.max(MIN_REQUESTS, Math.min(requests, MAX_ROUND_TIME * done / Math.max(1, elapsed)));
+                long min = Long.MAX_VALUE;
+                for (int r = 0; r < rounds; r++) {
+                    long before = allocated();
+                    for (int j = 0; j < n; j++) {
+                        process(body);
+                    }
+                    long after = allocated();
+                    min = Math.min(min, after - before - overhead);
+                }
+                rv[i] = Math.max(0, min / n);
+            }
+            return rv;
+        } finally {
+            getRate.stopTimedEvents();
+            routerInfo.stopTimedEvents();
+            routerManager.stopJobs();
+            authenticate.stopWorkers();
+            router.stop();
+            secMan.stopTimedEvents();
+            FileUtil.rmdir(dir, false);
+        }
+    }
+
+    /**
+     * Set From and To to the last HISTORY_WINDOW, waiting for it to be recorded
+     */
+    @SuppressWarnings("unchecked")
+    private static String historyWindow(String json, I2PAppContext ctx, RouterFacade router) throws InterruptedException {
+        // a sample or two to spare at each end
+        long wait = HISTORY_WINDOW + 2*1000 - router.getUptime();
+        if (wait > 0)
+            Thread.sleep(wait);
+        long to = ctx.clock().now() - 2*1000;
+        Map<String, Object> req = (Map<String, Object>) JSONValue.parse(json);
+        Map<String, Object> params = (Map<String, Object>) req.get("params");
+        params.put("From", to - HISTORY_WINDOW);
+        params.put("To", to);
+        params.put("Resolution", 1000);
+        return JSONObject.toJSONString(req);
+    }
+
+    /**
+     * What reading the counters twice allocates
+     */
+    private long overhead() {
+        long rv = Long.MAX_VALUE;
+        for (int i = 0; i < 100; i++) {
+            long before = allocated();
+            long after = allocated();
+            rv = Math.min(rv, after - before);
+        }
+        return rv;
+    }
+
+    /**
+     * Measure the AuthenticateHandler workers too, they are started
+     * on demand so look again after each warmup.
+     * Not while measuring, this allocates plenty.
+     */
+    private void findThreads() {
+        int n = 1;
+        long[] ids = new long[16];
+        ids[0] = _thread;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().startsWith("I2PControl Auth ") && n < ids.length)
+                ids[n++] = t.getId();
+        }
+        _measured = Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Bytes allocated so far by the measured threads, one that has exited counts as 0
+     */
+    private long allocated() {
+        long[] bytes = _threads.getThreadAllocatedBytes(_measured);
+        long rv = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] > 0)
+                rv += bytes[i];
+        }
+        return rv;
+    }
+
+    /**
+     * As JSONRPC2Servlet.doPost()
+     *
+     * @return null for a notification
+     */
+    private JSONRPC2Response process(byte[] body) throws IOException, JSONRPC2ParseException {
+        String req = new String(body, UTF8);
+        JSONRPC2Parser parser = new JSONRPC2Parser();
+        parser.lazyNumbers(true);
+        parser.compactObjects(true);
+        parser.setLimits(MAX_BYTES, MAX_DEPTH, MAX_STRING_LENGTH, MAX_MEMBERS);
+        JSONRPC2Message msg = parser.parseJSONRPC2Message(req);
+        if (!(msg instanceof JSONRPC2Request))
+            return null;
+        JSONRPC2Response resp = _disp.process((JSONRPC2Request) msg, null);
+        resp.toJSONObject().put("API", I2PControlVersion.API_VERSION);
+        resp.toJSONObject().writeJSONString(_out);
+        return resp;
+    }
+
+    private static void write(File f, long[] measured) throws IOException {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(f), UTF8));
+        try {
+            out.println("# Bytes allocated per request, by method, see bench/java/.../AllocationBudget.java");
+            out.println("# Checked by: ant alloc");
+            out.println("# Written by: ant alloc -Dalloc.args=-update");
+            for (int i = 0; i < Corpus.METHODS.length; i++) {
+                long b = (long) Math.ceil(measured[i] * HEADROOM / ROUND) * ROUND;
+                out.println(Corpus.METHODS[i] + "=" + Math.max(ROUND, b));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Like the servlet's response writer, without the bytes
+     */
+    private static class NullWriter extends Writer {
+        public void write(int c) {}
+        public void write(char[] buf, int off, int len) {}
+        public void write(String s, int off, int len) {}
+        public void flush() {}
+        public void close() {}
+    }
+}
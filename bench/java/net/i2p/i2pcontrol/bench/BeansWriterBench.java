@@ -0,0 +1,60 @@
+package net.i2p.i2pcontrol.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import net.minidev.json.JSONStyle;
+import net.minidev.json.reader.BeansWriter;
+import net.minidev.json.reader.JsonWriterI;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * BeansWriter with cached MethodHandle accessors against the previous
+ * reflective implementation, kept as ReflectiveBeansWriter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeansWriterBench {
+
+    @Param({ "methodhandle", "reflective" })
+    public String writer;
+
+    private JsonWriterI<Object> beansWriter;
+    private final Peer bean = new Peer();
+    private final StringBuilder buf = new StringBuilder(512);
+
+    @Setup
+    public void setup() {
+        beansWriter = writer.equals("reflective") ? new ReflectiveBeansWriter() : new BeansWriter();
+    }
+
+    @Benchmark
+    public int write() throws Exception {
+        buf.setLength(0);
+        beansWriter.writeJSONString(bean, buf, JSONStyle.NO_COMPRESS);
+        return buf.length();
+    }
+
+    /** a RouterInfo-like bean, public fields and getters */
+    public static class Peer {
+        public String hash = "8sTvxSlhWr6LOrA~Mb7Qw3Zz0xZt5RwU0Cg4xT4FqXk=";
+        public String caps = "XfR";
+        private String version = "0.9.34";
+        private long published = 1528734912482L;
+        private int port = 22648;
+        private double bandwidth = 38127.31640625;
+        private boolean reachable = true;
+        private String country = null;
+
+        public String getVersion() { return version; }
+        public long getPublished() { return published; }
+        public int getPort() { return port; }
+        public double getBandwidth() { return bandwidth; }
+        public boolean isReachable() { return reachable; }
+        public String getCountry() { return country; }
+    }
+}
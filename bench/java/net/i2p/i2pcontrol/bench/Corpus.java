@@ -0,0 +1,47 @@
+package net.i2p.i2pcontrol.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+/**
+ * The captured messages in bench/corpus, packaged into the benchmarks jar.
+ *
+ * Names are the file names without ".json", e.g. "GetRate.request".
+ * Requests of authenticated methods carry a placeholder Token,
+ * see DispatcherBench for how a valid one is put in.
+ */
+class Corpus {
+    static final String[] METHODS = { "Authenticate", "RouterInfo", "GetRate",
+                                      "NetworkSetting", "AdvancedSettings",
+                                      "NetDb", "RouterInfoHistory", "RouterManager",
+                                      "GetRates", "GetRateHistory", "ListStats",
+                                      "JobStatus", "I2PControl", "Echo" };
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private Corpus() {}
+
+    static String get(String name) {
+        return new String(getBytes(name), UTF8);
+    }
+
+    static byte[] getBytes(String name) {
+        InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name + ".json");
+        if (in == null)
+            throw new IllegalArgumentException("No corpus message " + name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+            byte[] buf = new byte[1024];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        } finally {
+            try { in.close(); } catch (IOException ioe) {}
+        }
+    }
+}
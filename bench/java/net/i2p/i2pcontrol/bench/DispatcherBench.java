@@ -0,0 +1,103 @@
+package net.i2p.i2pcontrol.bench;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2ParamsType;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+import com.thetransactioncompany.jsonrpc2.server.Dispatcher;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.FileUtil;
+
+import net.i2p.i2pcontrol.security.SecurityManager;
+import net.i2p.i2pcontrol.servlets.configuration.ConfigurationManager;
+import net.i2p.i2pcontrol.servlets.jsonrpc2handlers.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Dispatcher.process() for each corpus request, with the handlers
+ * registered as in JSONRPC2Servlet.
+ *
+ * Runs without a router, against a SimulatedRouterFacade, so the
+ * router handlers take their success path too.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatcherBench {
+
+    /** Corpus.METHODS */
+    @Param({ "Authenticate", "RouterInfo", "GetRate", "NetworkSetting", "AdvancedSettings",
+             "NetDb", "RouterInfoHistory", "RouterManager", "GetRates", "GetRateHistory",
+             "ListStats", "JobStatus", "I2PControl", "Echo" })
+    public String method;
+
+    private File dir;
+    private SecurityManager secMan;
+    private Dispatcher disp;
+    private RouterFacade router;
+    private GetRateHandler getRate;
+    private RouterInfoHandler routerInfo;
+    private RouterManagerHandler routerManager;
+    private AuthenticateHandler authenticate;
+    private JSONRPC2Request request;
+
+    @Setup
+    public void setup() throws Exception {
+        I2PAppContext ctx = I2PAppContext.getGlobalContext();
+        dir = new File(System.getProperty("java.io.tmpdir"), "i2pcontrol-bench-" + ctx.random().nextLong());
+        dir.mkdirs();
+        ConfigurationManager conf = new ConfigurationManager(ctx, dir, true);
+        secMan = new SecurityManager(ctx, null, conf);
+        JSONRPC2Helper helper = new JSONRPC2Helper(secMan);
+        router = new SimulatedRouterFacade(ctx);
+        ConfigVersions configVersions = new ConfigVersions(router);
+        routerInfo = new RouterInfoHandler(router, helper);
+        routerManager = new RouterManagerHandler(router, helper);
+        disp = new Dispatcher();
+        disp.register(new EchoHandler(helper));
+        getRate = new GetRateHandler(helper, conf);
+        disp.register(getRate);
+        authenticate = new AuthenticateHandler(helper, secMan, conf);
+        disp.register(authenticate);
+        disp.register(new NetworkSettingHandler(router, helper, configVersions));
+        disp.register(routerInfo);
+        disp.register(new NetDbHandler(router, helper));
+        disp.register(routerManager);
+        disp.register(new I2PControlHandler(router, helper, secMan));
+        disp.register(new AdvancedSettingsHandler(router, helper, configVersions));
+
+        request = JSONRPC2Request.parse(Corpus.get(method + ".request"));
+        if (request.getParamsType() == JSONRPC2ParamsType.OBJECT &&
+            request.getNamedParams().containsKey("Token")) {
+            String token = secMan.validatePasswd(SecurityManager.DEFAULT_AUTH_PASSWORD).getId();
+            request.getNamedParams().put("Token", token);
+        }
+        // make sure the success path is measured
+        JSONRPC2Response rv = disp.process(request, null);
+        if (!rv.indicatesSuccess())
+            throw new IllegalStateException(method + " failed: " + rv);
+    }
+
+    @TearDown
+    public void teardown() {
+        secMan.stopTimedEvents();
+        getRate.stopTimedEvents();
+        routerInfo.stopTimedEvents();
+        routerManager.stopJobs();
+        authenticate.stopWorkers();
+        router.stop();
+        FileUtil.rmdir(dir, false);
+    }
+
+    @Benchmark
+    public JSONRPC2Response process() {
+        return disp.process(request, null);
+    }
+}
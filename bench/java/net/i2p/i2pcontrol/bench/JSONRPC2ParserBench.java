@@ -0,0 +1,49 @@
+package net.i2p.i2pcontrol.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Message;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Parser;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JSONRPC2Parser.parseJSONRPC2Message(), by default and configured as
+ * in JSONRPC2Servlet.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSONRPC2ParserBench {
+
+    @Param({ "Authenticate.request", "RouterInfo.request", "GetRate.request",
+             "NetworkSetting.request", "AdvancedSettings.request",
+             "Authenticate.response", "RouterInfo.response", "GetRate.response",
+             "NetworkSetting.response", "AdvancedSettings.response" })
+    public String message;
+
+    @Param({ "default", "servlet" })
+    public String config;
+
+    private String text;
+    private JSONRPC2Parser parser;
+
+    @Setup
+    public void setup() {
+        text = Corpus.get(message);
+        parser = new JSONRPC2Parser();
+        if (config.equals("servlet")) {
+            parser.lazyNumbers(true);
+            parser.compactObjects(true);
+            parser.setLimits(256 * 1024, 32, 32 * 1024, 4096);
+        }
+    }
+
+    @Benchmark
+    public JSONRPC2Message parse() throws Exception {
+        return parser.parseJSONRPC2Message(text);
+    }
+}
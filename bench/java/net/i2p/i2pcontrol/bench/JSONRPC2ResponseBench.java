@@ -0,0 +1,46 @@
+package net.i2p.i2pcontrol.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+
+import net.minidev.json.JSONValue;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Serialization of JSONRPC2Response, as the servlet does with
+ * println(response), and streamed into a reused buffer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSONRPC2ResponseBench {
+
+    @Param({ "Authenticate.response", "RouterInfo.response", "GetRate.response",
+             "NetworkSetting.response", "AdvancedSettings.response" })
+    public String message;
+
+    private JSONRPC2Response response;
+    private final StringBuilder buf = new StringBuilder(4096);
+
+    @Setup
+    public void setup() throws Exception {
+        response = JSONRPC2Response.parse(Corpus.get(message));
+    }
+
+    @Benchmark
+    public String toJSONString() {
+        return response.toString();
+    }
+
+    @Benchmark
+    public int write() throws Exception {
+        buf.setLength(0);
+        JSONValue.writeJSONString(response.toJSONObject(), buf);
+        return buf.length();
+    }
+}
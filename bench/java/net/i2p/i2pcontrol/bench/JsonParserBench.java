@@ -0,0 +1,74 @@
+package net.i2p.i2pcontrol.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import net.minidev.json.parser.ContainerFactory;
+import net.minidev.json.parser.JSONParser;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The net.minidev.json parser on each input type, in the modes we use.
+ *
+ * variant: simple is what JSONRPC2Parser uses by default, lazy and compact
+ * are the options the servlet turns on, permissive is the json-smart default.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonParserBench {
+
+    @Param({ "Authenticate.request", "RouterInfo.request", "GetRate.request",
+             "NetworkSetting.request", "AdvancedSettings.request",
+             "Authenticate.response", "RouterInfo.response", "GetRate.response",
+             "NetworkSetting.response", "AdvancedSettings.response" })
+    public String message;
+
+    @Param({ "simple", "lazy", "compact", "permissive" })
+    public String variant;
+
+    private String text;
+    private byte[] bytes;
+    private JSONParser parser;
+    private ContainerFactory factory;
+
+    @Setup
+    public void setup() {
+        text = Corpus.get(message);
+        bytes = Corpus.getBytes(message);
+        int mode;
+        if (variant.equals("permissive"))
+            mode = JSONParser.MODE_PERMISSIVE;
+        else if (variant.equals("lazy"))
+            mode = JSONParser.MODE_JSON_SIMPLE | JSONParser.USE_LAZY_FLOAT;
+        else
+            mode = JSONParser.MODE_JSON_SIMPLE;
+        parser = new JSONParser(mode);
+        factory = variant.equals("compact") ? ContainerFactory.FACTORY_COMPACT : ContainerFactory.FACTORY_SIMPLE;
+    }
+
+    @Benchmark
+    public Object string() throws Exception {
+        return parser.parse(text, factory);
+    }
+
+    @Benchmark
+    public Object byteArray() throws Exception {
+        return parser.parse(bytes, factory);
+    }
+
+    @Benchmark
+    public Object reader() throws Exception {
+        return parser.parse(new StringReader(text), factory);
+    }
+
+    @Benchmark
+    public Object inputStream() throws Exception {
+        return parser.parse(new ByteArrayInputStream(bytes), factory);
+    }
+}
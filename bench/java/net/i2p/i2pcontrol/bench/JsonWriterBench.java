@@ -0,0 +1,50 @@
+package net.i2p.i2pcontrol.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import net.minidev.json.JSONStyle;
+import net.minidev.json.JSONValue;
+import net.minidev.json.parser.JSONParser;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * JsonWriter, through JSONValue, on the parsed response results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonWriterBench {
+
+    @Param({ "Authenticate.response", "RouterInfo.response", "GetRate.response",
+             "NetworkSetting.response", "AdvancedSettings.response" })
+    public String message;
+
+    @Param({ "NO_COMPRESS", "MAX_COMPRESS" })
+    public String style;
+
+    private Object json;
+    private JSONStyle jsonStyle;
+    private final StringBuilder buf = new StringBuilder(4096);
+
+    @Setup
+    public void setup() throws Exception {
+        json = new JSONParser(JSONParser.MODE_JSON_SIMPLE).parse(Corpus.get(message));
+        jsonStyle = style.equals("MAX_COMPRESS") ? JSONStyle.MAX_COMPRESS : JSONStyle.NO_COMPRESS;
+    }
+
+    @Benchmark
+    public int write() throws Exception {
+        buf.setLength(0);
+        JSONValue.writeJSONString(json, buf, jsonStyle);
+        return buf.length();
+    }
+
+    @Benchmark
+    public String toJSONString() {
+        return JSONValue.toJSONString(json, jsonStyle);
+    }
+}
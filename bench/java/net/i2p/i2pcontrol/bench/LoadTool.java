@@ -0,0 +1,444 @@
+package net.i2p.i2pcontrol.bench;
+
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Replays a request capture against a running I2PControl, and reports
+ * throughput and latency percentiles per method.
+ *
+ * Captures are written by the server when i2pcontrol.capture.file is set,
+ * see RequestCapture. The recorded gaps between requests are kept,
+ * divided by the speed, on as many connections as there are threads.
+ * Latency is measured from when a request was due, so it includes
+ * any time spent waiting for a free thread.
+ *
+ * A Token is fetched with Authenticate, and again when it expires.
+ * Captured Authenticate requests are sent with the given password.
+ * Requests that change something (RouterManager, and settings with values)
+ * are skipped unless -writes is given. AdvancedSettings set and setAll
+ * are always skipped, the capture only has their keys.
+ *
+ * As i2pcontrol.py does, server certificates are not checked.
+ *
+ * Usage: LoadTool [-url url] [-password pw] [-threads n] [-speed x] [-loops n] [-writes] capturefile
+ *   -speed 0 sends as fast as the threads allow.
+ *
+ * @since 0.12
+ */
+public class LoadTool {
+
+    private static final String DEFAULT_URL = "https://127.0.0.1:7650/";
+    private static final String DEFAULT_PASSWORD = "itoopie";
+    private static final int API_VERSION = 1;
+    private static final String FORMAT = "# I2PControl capture ";
+    /** NO_TOKEN, INVALID_TOKEN, TOKEN_EXPIRED */
+    private static final long[] TOKEN_ERRORS = { -32002, -32003, -32004 };
+    private static final double[] PERCENTILES = { 50, 90, 99 };
+
+    private final URL _url;
+    private final String _password;
+    private final int _threads;
+    private final double _speed;
+    private final int _loops;
+    private final List<Entry> _entries;
+    /** due time of each entry in its loop, in ms, before speed */
+    private final long[] _due;
+    private final Map<String, MethodStats> _stats = new TreeMap<String, MethodStats>();
+    private final AtomicInteger _next = new AtomicInteger();
+    private final AtomicLong _id = new AtomicLong();
+    private volatile String _token;
+    private long _start;
+
+    private static class Entry {
+        final long delta;
+        final String method;
+        final Map<String, Object> params;
+
+        Entry(long delta, String method, Map<String, Object> params) {
+            this.delta = delta;
+            this.method = method;
+            this.params = params;
+        }
+    }
+
+    private static class MethodStats {
+        private long[] _latencies = new long[64];
+        private int _count;
+        private int _errors;
+
+        /** @param latency in us */
+        synchronized void add(long latency, boolean error) {
+            if (_count == _latencies.length)
+                _latencies = Arrays.copyOf(_latencies, _count * 2);
+            _latencies[_count++] = latency;
+            if (error)
+                _errors++;
+        }
+    }
+
+    private LoadTool(URL url, String password, int threads, double speed, int loops, List<Entry> entries) {
+        _url = url;
+        _password = password;
+        _threads = threads;
+        _speed = speed;
+        _loops = loops;
+        _entries = entries;
+        _due = new long[entries.size()];
+        long t = 0;
+        for (int i = 0; i < _due.length; i++) {
+            t += entries.get(i).delta;
+            _due[i] = t;
+        }
+        for (Entry e : entries) {
+            if (!_stats.containsKey(e.method))
+                _stats.put(e.method, new MethodStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = DEFAULT_URL;
+        String password = DEFAULT_PASSWORD;
+        int threads = 4;
+        double speed = 1.0;
+        int loops = 1;
+        boolean writes = false;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("-writes")) {
+                writes = true;
+            } else if (a.startsWith("-") && i + 1 < args.length) {
+                String v = args[++i];
+                if (a.equals("-url"))
+                    url = v;
+                else if (a.equals("-password"))
+                    password = v;
+                else if (a.equals("-threads"))
+                    threads = Integer.parseInt(v);
+                else if (a.equals("-speed"))
+                    speed = Double.parseDouble(v);
+                else if (a.equals("-loops"))
+                    loops = Integer.parseInt(v);
+                else
+                    usage();
+            } else if (file == null && !a.startsWith("-")) {
+                file = a;
+            } else {
+                usage();
+            }
+        }
+        if (file == null || threads <= 0 || speed < 0 || loops <= 0)
+            usage();
+        List<Entry> entries = read(file, writes);
+        if (entries.isEmpty()) {
+            System.err.println("No requests to replay in " + file);
+            System.exit(1);
+        }
+        // HttpURLConnection keeps at most this many idle connections per host
+        System.setProperty("http.maxConnections", Integer.toString(threads));
+        trustAll();
+        LoadTool tool = new LoadTool(new URL(url), password, threads, speed, loops, entries);
+        tool.run();
+        tool.report();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: LoadTool [-url url] [-password pw] [-threads n] [-speed x] [-loops n] [-writes] capturefile\n" +
+                           "  defaults: -url " + DEFAULT_URL + " -password " + DEFAULT_PASSWORD +
+                           " -threads 4 -speed 1 -loops 1\n" +
+                           "  -speed 0 sends as fast as the threads allow\n" +
+                           "  -writes also replays requests that change the router,\n" +
+                           "  except AdvancedSettings set and setAll");
+        System.exit(1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Entry> read(String file, boolean writes) throws IOException {
+        List<Entry> rv = new ArrayList<Entry>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            long skipped = 0;
+            int version = 0;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    if (!line.startsWith(FORMAT))
+                        throw new IOException("Not a capture file: " + file);
+                    String v = line.substring(FORMAT.length()).trim();
+                    if (v.equals("1"))
+                        version = 1;
+                    else if (v.equals("2"))
+                        version = 2;
+                    else
+                        throw new IOException("Unsupported capture version " + v + " in " + file);
+                    continue;
+                }
+                if (version == 0)
+                    throw new IOException("Not a capture file: " + file);
+                String[] f = line.split("\t", 3);
+                if (f.length != 3)
+                    throw new IOException("Bad line in " + file + ": " + line);
+                long delta = Long.parseLong(f[0]) + skipped;
+                // version 1 had the method as is
+                Object method = version == 1 ? f[1] : JSONValue.parse(f[1]);
+                Object params = JSONValue.parse(f[2]);
+                if (!(method instanceof String) || !(params instanceof Map))
+                    throw new IOException("Bad line in " + file + ": " + line);
+                Map<String, Object> p = (Map<String, Object>) params;
+                if (isRedacted((String) method, p) || (!writes && isWrite((String) method, p))) {
+                    // keep the time, so the rest stays on schedule
+                    skipped = delta;
+                    continue;
+                }
+                skipped = 0;
+                rv.add(new Entry(delta, (String) method, p));
+            }
+        } finally {
+            in.close();
+        }
+        return rv;
+    }
+
+    /**
+     * Settings the capture only has the keys of, replaying them would
+     * write garbage into the router config
+     */
+    private static boolean isRedacted(String method, Map<String, Object> params) {
+        return method.equals("AdvancedSettings") &&
+               (params.containsKey("set") || params.containsKey("setAll"));
+    }
+
+    /**
+     * Does it change the router or its config.
+     * For NetworkSetting and I2PControl, a non-null value is a set.
+     */
+    private static boolean isWrite(String method, Map<String, Object> params) {
+        if (method.equals("RouterManager"))
+            return true;
+        if (method.equals("AdvancedSettings"))
+            return params.containsKey("set") || params.containsKey("setAll");
+        if (method.equals("NetworkSetting") || method.equals("I2PControl")) {
+            for (Object v : params.values()) {
+                if (v != null)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private void run() throws InterruptedException {
+        authenticate(null);
+        _start = System.nanoTime();
+        List<Thread> threads = new ArrayList<Thread>(_threads);
+        for (int i = 0; i < _threads; i++) {
+            Thread t = new Thread(new Runner(), "LoadTool " + i);
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    private class Runner implements Runnable {
+        public void run() {
+            int size = _entries.size();
+            // loops follow each other directly
+            long loopTime = _due[size - 1] + _entries.get(0).delta;
+            int i;
+            while ((i = _next.getAndIncrement()) < size * _loops) {
+                Entry e = _entries.get(i % size);
+                long begin;
+                if (_speed > 0) {
+                    long due = (long) (((i / size) * loopTime + _due[i % size]) / _speed);
+                    begin = _start + due * 1000000L;
+                    long wait = (begin - System.nanoTime()) / 1000000L;
+                    if (wait > 0) {
+                        try {
+                            Thread.sleep(wait);
+                        } catch (InterruptedException ie) {
+                            return;
+                        }
+                    }
+                } else {
+                    begin = System.nanoTime();
+                }
+                boolean error = !send(e);
+                long latency = (System.nanoTime() - begin) / 1000;
+                _stats.get(e.method).add(latency, error);
+            }
+        }
+    }
+
+    /**
+     * @return success
+     */
+    private boolean send(Entry e) {
+        try {
+            String token = _token;
+            JSONObject rv = call(e, token);
+            if (isTokenError(rv)) {
+                authenticate(token);
+                rv = call(e, _token);
+            }
+            return rv.get("error") == null;
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    private JSONObject call(Entry e, String token) throws IOException {
+        JSONObject params = new JSONObject(e.params);
+        if (e.method.equals("Authenticate")) {
+            params.put("Password", _password);
+        } else {
+            params.put("Token", token);
+        }
+        return post(e.method, params);
+    }
+
+    /**
+     * Get a new token, unless another thread already replaced the old one
+     */
+    private synchronized void authenticate(String old) {
+        if (_token != null && !_token.equals(old))
+            return;
+        JSONObject params = new JSONObject();
+        params.put("API", API_VERSION);
+        params.put("Password", _password);
+        try {
+            JSONObject rv = post("Authenticate", params);
+            Object result = rv.get("result");
+            if (result instanceof Map) {
+                Object token = ((Map) result).get("Token");
+                if (token instanceof String) {
+                    _token = (String) token;
+                    return;
+                }
+            }
+            throw new IllegalStateException("Authenticate failed: " + rv);
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Authenticate failed", ioe);
+        }
+    }
+
+    private static boolean isTokenError(JSONObject rv) {
+        Object error = rv.get("error");
+        if (!(error instanceof Map))
+            return false;
+        Object code = ((Map) error).get("code");
+        if (!(code instanceof Number))
+            return false;
+        long c = ((Number) code).longValue();
+        for (long t : TOKEN_ERRORS) {
+            if (c == t)
+                return true;
+        }
+        return false;
+    }
+
+    private JSONObject post(String method, JSONObject params) throws IOException {
+        JSONObject req = new JSONObject();
+        req.put("jsonrpc", "2.0");
+        req.put("id", _id.incrementAndGet());
+        req.put("method", method);
+        req.put("params", params);
+        byte[] body = req.toJSONString().getBytes("UTF-8");
+        HttpURLConnection conn = (HttpURLConnection) _url.openConnection();
+        conn.setDoOutput(true);
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setFixedLengthStreamingMode(body.length);
+        OutputStream out = conn.getOutputStream();
+        out.write(body);
+        out.close();
+        // read it all, or the connection is not reused
+        InputStream in = conn.getInputStream();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(1024);
+        byte[] b = new byte[4096];
+        int n;
+        try {
+            while ((n = in.read(b)) != -1) {
+                buf.write(b, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        Object rv = JSONValue.parse(buf.toString("UTF-8"));
+        if (!(rv instanceof JSONObject))
+            throw new IOException("Bad response");
+        return (JSONObject) rv;
+    }
+
+    private void report() {
+        double secs = (System.nanoTime() - _start) / 1000000000d;
+        System.out.println(String.format("%d requests on %d threads in %.1f s",
+                                         _entries.size() * (long) _loops, _threads, secs));
+        System.out.println(String.format("%-20s %8s %7s %9s %9s %9s %9s %9s",
+                                         "Method", "Count", "Errors", "Req/s", "p50 ms", "p90 ms", "p99 ms", "Max ms"));
+        for (Map.Entry<String, MethodStats> e : _stats.entrySet()) {
+            MethodStats s = e.getValue();
+            long[] l;
+            int errors;
+            synchronized (s) {
+                l = Arrays.copyOf(s._latencies, s._count);
+                errors = s._errors;
+            }
+            if (l.length == 0)
+                continue;
+            Arrays.sort(l);
+            StringBuilder buf = new StringBuilder(128);
+            buf.append(String.format("%-20s %8d %7d %9.1f", e.getKey(), l.length, errors, l.length / secs));
+            for (double p : PERCENTILES) {
+                int idx = (int) Math.ceil(p / 100 * l.length) - 1;
+                buf.append(String.format(" %9.2f", l[Math.max(0, idx)] / 1000d));
+            }
+            buf.append(String.format(" %9.2f", l[l.length - 1] / 1000d));
+            System.out.println(buf);
+        }
+    }
+
+    /**
+     * I2PControl has a self-signed certificate
+     */
+    private static void trustAll() throws GeneralSecurityException {
+        TrustManager tm = new X509TrustManager() {
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+            public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
+        };
+        SSLContext ctx = SSLContext.getInstance("TLS");
+        ctx.init(null, new TrustManager[] { tm }, null);
+        HttpsURLConnection.setDefaultSSLSocketFactory(ctx.getSocketFactory());
+        HttpsURLConnection.setDefaultHostnameVerifier(new HostnameVerifier() {
+            public boolean verify(String host, SSLSession session) { return true; }
+        });
+    }
+}
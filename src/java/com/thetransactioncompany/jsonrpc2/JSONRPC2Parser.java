@@ -59,7 +59,7 @@ public class JSONRPC2Parser {
 	/**
 	 * Reusable JSON parser. Not thread-safe!
 	 */
-	private final JSONParser parser;
+	private JSONParser parser;
 	
 	
 	/**
@@ -83,6 +83,30 @@ public class JSONRPC2Parser {
 	private boolean parseNonStdAttributes;
 	
 	
+	/**
+	 * If {@code true} decimal numbers are parsed as 
+	 * {@link net.minidev.json.LazyNumber} and only converted when read.
+	 */
+	private boolean lazyNumbers;
+	
+	
+	/**
+	 * If {@code true} JSON objects are parsed into 
+	 * {@link net.minidev.json.CompactJSONObject} instances, unless the
+	 * member order is to be preserved.
+	 */
+	private boolean compactObjects;
+	
+	
+	/**
+	 * Limits passed to the JSON parser, unlimited by default.
+	 */
+	private int maxLength = Integer.MAX_VALUE;
+	private int maxDepth = Integer.MAX_VALUE;
+	private int maxStringLength = Integer.MAX_VALUE;
+	private int maxMembers = Integer.MAX_VALUE;
+	
+	
 	/**
 	 * Creates a new JSON-RPC 2.0 message parser.
 	 *
@@ -192,11 +216,19 @@ public class JSONRPC2Parser {
 			if (preserveOrder)
 				json = parser.parse(jsonString, ContainerFactory.FACTORY_ORDERED);
 
+			else if (compactObjects)
+				json = parser.parse(jsonString, ContainerFactory.FACTORY_COMPACT);
+
 			else
 				json = parser.parse(jsonString);
 				
 		} catch (ParseException e) {
 
+			if (e.getErrorType() == ParseException.ERROR_LIMIT_EXCEEDED)
+				throw new JSONRPC2ParseException("Invalid JSON: " + e.getMessage(), 
+				                                 JSONRPC2ParseException.JSON, 
+				                                 jsonString);
+
 			// Terse message, do not include full parse exception message
 			throw new JSONRPC2ParseException("Invalid JSON", 
 				                         JSONRPC2ParseException.JSON, 
@@ -651,4 +683,98 @@ public class JSONRPC2Parser {
 	
 		return parseNonStdAttributes;
 	}
+	
+	
+	/**
+	 * Specifies whether decimal numbers are parsed as 
+	 * {@link net.minidev.json.LazyNumber} instances, which keep the source
+	 * digits and convert to {@code double}, {@code long} or 
+	 * {@code BigDecimal} only on demand. Disabled by default, in which 
+	 * case decimals are parsed as {@code Double} or {@code BigDecimal}.
+	 *
+	 * <p>Integer numbers are not affected.
+	 *
+	 * @param enable {@code true} to parse decimals lazily, else 
+	 *               {@code false}.
+	 */
+	public void lazyNumbers(final boolean enable) {
+	
+		if (enable == lazyNumbers)
+			return;
+		
+		lazyNumbers = enable;
+		
+		if (enable)
+			parser = new JSONParser(JSONParser.MODE_JSON_SIMPLE | JSONParser.USE_LAZY_FLOAT);
+		else
+			parser = new JSONParser(JSONParser.MODE_JSON_SIMPLE);
+		
+		parser.setLimits(maxLength, maxDepth, maxStringLength, maxMembers);
+	}
+	
+	
+	/**
+	 * Sets limits on the JSON text to parse. A message exceeding any of
+	 * them is rejected as invalid JSON before the offending value is 
+	 * built. Unlimited by default.
+	 *
+	 * @param maxLength       The maximum message length, in characters.
+	 * @param maxDepth        The maximum nesting depth of JSON objects and
+	 *                        arrays, the message object itself counting as
+	 *                        one.
+	 * @param maxStringLength The maximum length of a string or member 
+	 *                        name once unescaped, or of a number.
+	 * @param maxMembers      The maximum number of members of a JSON 
+	 *                        object or elements of a JSON array.
+	 */
+	public void setLimits(final int maxLength, final int maxDepth, 
+	                      final int maxStringLength, final int maxMembers) {
+	
+		this.maxLength = maxLength;
+		this.maxDepth = maxDepth;
+		this.maxStringLength = maxStringLength;
+		this.maxMembers = maxMembers;
+		
+		parser.setLimits(maxLength, maxDepth, maxStringLength, maxMembers);
+	}
+	
+	
+	/**
+	 * Specifies whether JSON objects are parsed into 
+	 * {@link net.minidev.json.CompactJSONObject} instances, which hold a
+	 * few members in a flat array instead of a hash table. Disabled by 
+	 * default. Has no effect if the member order is preserved.
+	 *
+	 * @param enable {@code true} to parse into compact objects, else 
+	 *               {@code false}.
+	 */
+	public void compactObjects(final boolean enable) {
+	
+		compactObjects = enable;
+	}
+	
+	
+	/**
+	 * Returns {@code true} if JSON objects are parsed into compact maps.
+	 *
+	 * @return {@code true} if JSON objects are parsed into 
+	 *         {@link net.minidev.json.CompactJSONObject} instances, else
+	 *         {@code false}.
+	 */
+	public boolean usesCompactObjects() {
+	
+		return compactObjects;
+	}
+	
+	
+	/**
+	 * Returns {@code true} if decimal numbers are parsed lazily.
+	 *
+	 * @return {@code true} if decimal numbers are parsed as 
+	 *         {@link net.minidev.json.LazyNumber}, else {@code false}.
+	 */
+	public boolean usesLazyNumbers() {
+	
+		return lazyNumbers;
+	}
 }
@@ -324,7 +324,7 @@ public class NamedParamsRetriever
 		                 final String[] optionalNames) {
 	
 		// Do shallow copy of params
-		Map paramsCopy = (Map)((HashMap)params).clone();
+		Map<String,Object> paramsCopy = new HashMap<String,Object>(params);
 	
 		// Pop the mandatory names
 		for (String name: mandatoryNames) {
@@ -205,9 +205,9 @@ public class I2PControlController implements RouterApp {
     private synchronized void start(String args[]) throws Exception {
         _appContext.logManager().getLog(JSONRPC2Servlet.class).setMinimumPriority(Log.DEBUG);
         _server.start();
-        _context.portMapper().register(SVC_HTTPS_I2PCONTROL,
-                                       _conf.getConf("i2pcontrol.listen.address", "127.0.0.1"),
-                                       _conf.getConf("i2pcontrol.listen.port", 7650));
+        _appContext.portMapper().register(SVC_HTTPS_I2PCONTROL,
+                                          _conf.getConf("i2pcontrol.listen.address", "127.0.0.1"),
+                                          _conf.getConf("i2pcontrol.listen.port", 7650));
     }
 
 
@@ -236,7 +236,7 @@ public class I2PControlController implements RouterApp {
         server.addConnector(ssl);
 
         ServletHandler sh = new ServletHandler();
-        sh.addServletWithMapping(new ServletHolder(new JSONRPC2Servlet(_context, _secMan)), "/");
+        sh.addServletWithMapping(new ServletHolder(new JSONRPC2Servlet(_context, _secMan, _conf)), "/");
         HostCheckHandler hch = new HostCheckHandler(_appContext);
         Set<String> listenHosts = new HashSet<String>(8);
         // fix up the allowed hosts set (see HostCheckHandler)
@@ -1,41 +1,73 @@
 package net.i2p.i2pcontrol.security;
 
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
 
 
 public class AuthToken {
     static final int VALIDITY_TIME = 1; // Measured in days
-    private final SecurityManager _secMan;
+    static final long VALIDITY_MS = VALIDITY_TIME * 24*60*60*1000L;
     private final String id;
-    private final Date expiry;
+    /** null if the id is not the Base64 of 32 bytes, e.g. a stateless one */
+    private final TokenStore.Key _key;
+    /** System.nanoTime(), unaffected by clock changes */
+    private final long _deadline;
+    /** ms since epoch, for display only */
+    private final long _expires;
 
-    public AuthToken(SecurityManager secMan, String password) {
-        _secMan = secMan;
-        String hash = _secMan.getPasswdHash(password);
-        this.id = _secMan.getHash(hash + Calendar.getInstance().getTimeInMillis());
-        Calendar expiry = Calendar.getInstance();
-        expiry.add(Calendar.DAY_OF_YEAR, VALIDITY_TIME);
-        this.expiry = expiry.getTime();
+    /**
+     *  The password was checked by the caller, the id is random
+     *  or a StatelessTokens one.
+     *  @param now ms since epoch, from the same clock as expires
+     *  @param expires ms since epoch
+     *  @since 0.12
+     */
+    AuthToken(String id, long now, long expires) {
+        this.id = id;
+        _key = TokenStore.Key.parse(id);
+        _deadline = System.nanoTime() + (expires - now) * 1000*1000;
+        _expires = expires;
     }
 
     public String getId() {
         return id;
     }
 
+    /** @since 0.12 */
+    TokenStore.Key getKey() {
+        return _key;
+    }
+
+    /** @since 0.12 */
+    long getDeadline() {
+        return _deadline;
+    }
+
     /**
      * Checks whether the AuthToken has expired.
      * @return True if AuthToken hasn't expired. False in any other case.
      */
     public boolean isValid() {
-        return Calendar.getInstance().getTime().before(expiry);
+        return isValid(System.nanoTime());
+    }
+
+    /**
+     * @param now System.nanoTime()
+     * @since 0.12
+     */
+    boolean isValid(long now) {
+        return now - _deadline < 0;
     }
 
     public String getExpiryTime() {
+        return formatTime(_expires);
+    }
+
+    /** @since 0.12 */
+    static String formatTime(long time) {
         SimpleDateFormat sdf = new SimpleDateFormat();
         sdf.applyPattern("yyyy-MM-dd HH:mm:ss");
-        return sdf.format(expiry);
+        return sdf.format(new Date(time));
     }
 
     @Override
@@ -21,7 +21,6 @@ import net.i2p.crypto.SHA256Generator;
 import net.i2p.data.Base64;
 import net.i2p.data.DataHelper;
 import net.i2p.util.Log;
-import net.i2p.util.SimpleTimer2;
 
 import org.mindrot.jbcrypt.BCrypt;
 
@@ -33,16 +32,19 @@ import javax.net.ssl.SSLSocketFactory;
 import java.security.KeyStore;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
-import java.util.Iterator;
 
 /**
  * Manage the password storing for I2PControl.
  */
 public class SecurityManager {
     public final static String DEFAULT_AUTH_PASSWORD = "itoopie";
-    private final HashMap<String, AuthToken> authTokens;
-    private final SimpleTimer2.TimedEvent timer;
+    /** Hand out StatelessTokens instead of stored ones */
+    public final static String PROP_STATELESS_TOKENS = "auth.token.stateless";
+    private final TokenStore authTokens;
+    /** null if not enabled */
+    private final StatelessTokens _stateless;
+    /** as the SHA-256 ones before */
+    private static final int TOKEN_ID_BYTES = 32;
     private final KeyStore _ks;
     private final Log _log;
     private final ConfigurationManager _conf;
@@ -55,18 +57,14 @@ public class SecurityManager {
         _context = ctx;
         _conf = conf;
         _log = ctx.logManager().getLog(SecurityManager.class);
-        authTokens = new HashMap<String, AuthToken>();
-
-        timer = new Sweeper();
+        authTokens = new TokenStore(ctx);
+        _stateless = conf.getConf(PROP_STATELESS_TOKENS, false) ? new StatelessTokens(ctx, conf) : null;
 
         _ks = ksp != null ? ksp.getDefaultKeyStore() : null;
     }
 
     public void stopTimedEvents() {
-        timer.cancel();
-        synchronized (authTokens) {
-            authTokens.clear();
-        }
+        authTokens.stop();
     }
 
     /**
@@ -172,14 +170,20 @@ public class SecurityManager {
     /**
      * Add a Authentication Token if the provided password is valid.
      * The token will be valid for one day.
+     * With auth.token.stateless, it is a StatelessTokens one, and is not stored.
      * @return AuthToken if password is valid. If password is invalid null will be returned.
      */
     public AuthToken validatePasswd(String pwd) {
         if (isValid(pwd)) {
-            AuthToken token = new AuthToken(this, pwd);
-            synchronized (authTokens) {
-                authTokens.put(token.getId(), token);
-            }
+            long now = _context.clock().now();
+            long expires = now + AuthToken.VALIDITY_MS;
+            if (_stateless != null)
+                return new AuthToken(_stateless.create(expires, StatelessTokens.SCOPE_ALL), now, expires);
+            // no need to hash the password again, any unguessable id will do
+            byte[] id = new byte[TOKEN_ID_BYTES];
+            _context.random().nextBytes(id);
+            AuthToken token = new AuthToken(Base64.encode(id), now, expires);
+            authTokens.add(token);
             return token;
         } else {
             return null;
@@ -198,9 +202,9 @@ public class SecurityManager {
         if (!newHash.equals(oldHash)) {
             _conf.setConf("auth.password", newHash);
             _conf.writeConfFile();
-            synchronized (authTokens) {
-                authTokens.clear();
-            }
+            authTokens.clear();
+            if (_stateless != null)
+                _stateless.rotate(false);
             return true;
         }
         return false;
@@ -213,40 +217,21 @@ public class SecurityManager {
      * @throws ExpiredAuthTokenException
      */
     public void verifyToken(String tokenID) throws InvalidAuthTokenException, ExpiredAuthTokenException {
-        synchronized (authTokens) {
-            AuthToken token = authTokens.get(tokenID);
-            if (token == null)
-                throw new InvalidAuthTokenException("AuthToken with ID: " + tokenID + " couldn't be found.");
-            if (!token.isValid()) {
-                authTokens.remove(tokenID);
-                throw new ExpiredAuthTokenException("AuthToken with ID: " + tokenID + " expired " + token.getExpiryTime(), token.getExpiryTime());
+        if (_stateless != null && StatelessTokens.isStateless(tokenID)) {
+            long expires = _stateless.verify(tokenID);
+            if (expires <= _context.clock().now()) {
+                String time = AuthToken.formatTime(expires);
+                throw new ExpiredAuthTokenException("AuthToken with ID: " + tokenID + " expired " + time, time);
             }
+            return;
         }
-        // Everything is fine. :)
-    }
-
-    /**
-     * Clean up old authorization tokens to keep the token store slim and fit.
-     * @author hottuna
-     *
-     */
-    private class Sweeper extends SimpleTimer2.TimedEvent {
-        // Start running periodic task after 1 day, run periodically every 30 minutes.
-        public Sweeper() {
-            super(_context.simpleTimer2(), AuthToken.VALIDITY_TIME * 24*60*60*1000L);
-        }
-
-        public void timeReached() {
-            _log.debug("Starting cleanup job..");
-            synchronized (authTokens) {
-                for (Iterator<AuthToken> iter = authTokens.values().iterator(); iter.hasNext(); ) {
-                    AuthToken token = iter.next();
-                    if (!token.isValid())
-                        iter.remove();
-                }
-            }
-            _log.debug("Cleanup job done.");
-            schedule(30*60*1000L);
+        AuthToken token = authTokens.get(tokenID);
+        if (token == null)
+            throw new InvalidAuthTokenException("AuthToken with ID: " + tokenID + " couldn't be found.");
+        if (!token.isValid()) {
+            authTokens.remove(token);
+            throw new ExpiredAuthTokenException("AuthToken with ID: " + tokenID + " expired " + token.getExpiryTime(), token.getExpiryTime());
         }
+        // Everything is fine. :)
     }
 }
@@ -0,0 +1,222 @@
+package net.i2p.i2pcontrol.security;
+
+import net.i2p.I2PAppContext;
+import net.i2p.data.Base64;
+import net.i2p.data.DataHelper;
+import net.i2p.data.SessionKey;
+import net.i2p.util.Log;
+
+import net.i2p.i2pcontrol.servlets.configuration.ConfigurationManager;
+
+import java.security.GeneralSecurityException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AuthTokens that carry their own expiry and scope, signed with an
+ * HMAC-SHA256 key kept in I2PControl.conf. Nothing is stored per token,
+ * so they stay valid across restarts, and checking one is a MAC
+ * and a constant time compare.
+ *
+ * Format, before Base64: version, scope, expiry (ms since epoch, 8 bytes),
+ * NONCE_LEN random bytes, then the MAC of all that.
+ * At 64 chars they can't be confused with the 44 char stored tokens.
+ *
+ * The key is replaced when older than PROP_KEY_MAX_AGE days. The previous
+ * key is kept for tokens it signed, those expire within a day anyway.
+ * A password change replaces the key without keeping the old one.
+ *
+ * @since 0.12
+ */
+class StatelessTokens {
+
+    public static final String PROP_KEY = "auth.token.key";
+    public static final String PROP_PREVIOUS_KEY = "auth.token.key.previous";
+    public static final String PROP_KEY_CREATED = "auth.token.key.created";
+    public static final String PROP_KEY_MAX_AGE = "auth.token.key.maxage";
+    private static final int DEFAULT_KEY_MAX_AGE = 30;
+    /**
+     * Days. Only one previous key is kept, so rotating more often than
+     * tokens expire would drop keys that still have valid tokens.
+     */
+    private static final int MIN_KEY_MAX_AGE = (int) (AuthToken.VALIDITY_MS / (24*60*60*1000L));
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final byte VERSION = 1;
+    /** all methods, the only scope for now */
+    public static final byte SCOPE_ALL = 1;
+    private static final int NONCE_LEN = 6;
+    private static final int DATA_LEN = 2 + 8 + NONCE_LEN;
+    private static final int MAC_LEN = 32;
+    private static final int TOKEN_LEN = DATA_LEN + MAC_LEN;
+    /** Base64 of TOKEN_LEN bytes */
+    private static final int ENCODED_LEN = (TOKEN_LEN + 2) / 3 * 4;
+
+    private final I2PAppContext _context;
+    private final ConfigurationManager _conf;
+    private final Log _log;
+    private final long _maxAge;
+    private volatile Keys _keys;
+
+    /** Mac isn't thread safe, one per thread, keyed on each use */
+    private static final ThreadLocal<Mac> _macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance(MAC_ALGORITHM);
+            } catch (GeneralSecurityException gse) {
+                // required in every JRE
+                throw new IllegalStateException(gse);
+            }
+        }
+    };
+
+    private static class Keys {
+        final SessionKey current;
+        /** null if none */
+        final SessionKey previous;
+        final SecretKeySpec currentSpec;
+        /** null if none */
+        final SecretKeySpec previousSpec;
+        final long created;
+
+        Keys(SessionKey current, SessionKey previous, long created) {
+            this.current = current;
+            this.previous = previous;
+            currentSpec = new SecretKeySpec(current.getData(), MAC_ALGORITHM);
+            previousSpec = previous != null ? new SecretKeySpec(previous.getData(), MAC_ALGORITHM) : null;
+            this.created = created;
+        }
+    }
+
+    public StatelessTokens(I2PAppContext ctx, ConfigurationManager conf) {
+        _context = ctx;
+        _conf = conf;
+        _log = ctx.logManager().getLog(StatelessTokens.class);
+        int maxAge = conf.getConf(PROP_KEY_MAX_AGE, DEFAULT_KEY_MAX_AGE);
+        if (maxAge < MIN_KEY_MAX_AGE) {
+            _log.logAlways(Log.WARN, PROP_KEY_MAX_AGE + " must be at least " + MIN_KEY_MAX_AGE +
+                                     " days, using " + MIN_KEY_MAX_AGE);
+            maxAge = MIN_KEY_MAX_AGE;
+        }
+        _maxAge = maxAge * 24*60*60*1000L;
+        synchronized (_conf) {
+            SessionKey current = decodeKey(_conf.getConf(PROP_KEY, ""));
+            if (current == null) {
+                rotate(false);
+            } else {
+                long created;
+                try {
+                    created = Long.parseLong(_conf.getConf(PROP_KEY_CREATED, "0"));
+                } catch (NumberFormatException nfe) {
+                    created = 0;
+                }
+                _keys = new Keys(current, decodeKey(_conf.getConf(PROP_PREVIOUS_KEY, "")), created);
+            }
+        }
+    }
+
+    /**
+     * @return true if it looks like one of ours, it may still be invalid
+     */
+    public static boolean isStateless(String id) {
+        return id != null && id.length() == ENCODED_LEN;
+    }
+
+    /**
+     * @param expires ms since epoch
+     */
+    public String create(long expires, byte scope) {
+        Keys keys = _keys;
+        if (_context.clock().now() - keys.created > _maxAge) {
+            synchronized (_conf) {
+                // only one of the racing creators
+                if (_keys == keys)
+                    rotate(true);
+                keys = _keys;
+            }
+        }
+        byte[] token = new byte[TOKEN_LEN];
+        token[0] = VERSION;
+        token[1] = scope;
+        DataHelper.toLong(token, 2, 8, expires);
+        _context.random().nextBytes(token, 2 + 8, NONCE_LEN);
+        mac(keys.currentSpec, token, token, DATA_LEN);
+        return Base64.encode(token);
+    }
+
+    /**
+     * Only checks the MAC, the caller checks the expiry
+     *
+     * @return expiry, ms since epoch
+     * @throws InvalidAuthTokenException if malformed or not signed by our keys
+     */
+    public long verify(String id) throws InvalidAuthTokenException {
+        byte[] token = isStateless(id) ? Base64.decode(id) : null;
+        if (token == null || token.length != TOKEN_LEN || token[0] != VERSION || token[1] != SCOPE_ALL)
+            throw new InvalidAuthTokenException("AuthToken with ID: " + id + " couldn't be found.");
+        Keys keys = _keys;
+        byte[] mac = new byte[MAC_LEN];
+        mac(keys.currentSpec, token, mac, 0);
+        if (!DataHelper.eqCT(mac, 0, token, DATA_LEN, MAC_LEN)) {
+            boolean ok = false;
+            if (keys.previousSpec != null) {
+                mac(keys.previousSpec, token, mac, 0);
+                ok = DataHelper.eqCT(mac, 0, token, DATA_LEN, MAC_LEN);
+            }
+            if (!ok)
+                throw new InvalidAuthTokenException("AuthToken with ID: " + id + " couldn't be found.");
+        }
+        return DataHelper.fromLong(token, 2, 8);
+    }
+
+    /**
+     * MAC the DATA_LEN bytes at the start of token into out at offset
+     */
+    private static void mac(SecretKeySpec key, byte[] token, byte[] out, int offset) {
+        Mac mac = _macs.get();
+        try {
+            mac.init(key);
+            mac.update(token, 0, DATA_LEN);
+            mac.doFinal(out, offset);
+        } catch (GeneralSecurityException gse) {
+            // our keys are always valid and the output fits
+            throw new IllegalStateException(gse);
+        }
+    }
+
+    /**
+     * Replace the key, and save it
+     *
+     * @param keepPrevious if false, tokens signed so far become invalid
+     */
+    public void rotate(boolean keepPrevious) {
+        byte[] k = new byte[SessionKey.KEYSIZE_BYTES];
+        _context.random().nextBytes(k);
+        SessionKey key = new SessionKey(k);
+        long now = _context.clock().now();
+        synchronized (_conf) {
+            Keys old = _keys;
+            SessionKey previous = keepPrevious && old != null ? old.current : null;
+            _keys = new Keys(key, previous, now);
+            _conf.setConf(PROP_KEY, Base64.encode(k));
+            _conf.setConf(PROP_PREVIOUS_KEY, previous != null ? Base64.encode(previous.getData()) : "");
+            _conf.setConf(PROP_KEY_CREATED, Long.toString(now));
+            _conf.writeConfFile();
+        }
+        if (_log.shouldInfo())
+            _log.info("New token key" + (keepPrevious ? ", previous one still accepted" : ""));
+    }
+
+    /**
+     * @return null if empty or invalid
+     */
+    private static SessionKey decodeKey(String s) {
+        if (s.length() == 0)
+            return null;
+        byte[] k = Base64.decode(s);
+        if (k == null || k.length != SessionKey.KEYSIZE_BYTES)
+            return null;
+        return new SessionKey(k);
+    }
+}
@@ -0,0 +1,222 @@
+package net.i2p.i2pcontrol.security;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.Log;
+import net.i2p.util.SimpleTimer2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The valid AuthTokens, keyed by their raw 32 bytes.
+ *
+ * Lookups take no lock. Adds and expiry are rare and share one lock.
+ *
+ * Expiry is a hashed timing wheel: a token goes in the slot of the
+ * TICK its deadline falls in, and every TICK the timer removes the
+ * expired tokens of the current slot only. The wheel turns once in
+ * SLOTS * TICK, longer than the token validity, so a token is looked
+ * at once, when it expires.
+ * A token past its deadline but not yet swept still fails isValid().
+ *
+ * @since 0.12
+ */
+class TokenStore {
+
+    private static final long TICK = 60*1000;
+    private static final long TICK_NS = TICK * 1000*1000;
+    /** power of 2, SLOTS * TICK should exceed AuthToken validity */
+    private static final int SLOTS = 2048;
+    private static final int MASK = SLOTS - 1;
+
+    private final I2PAppContext _context;
+    private final Log _log;
+    private final ConcurrentHashMap<Key, AuthToken> _tokens = new ConcurrentHashMap<Key, AuthToken>();
+    /** nanoTime of tick 0 */
+    private final long _base;
+    // all below guarded by this
+    @SuppressWarnings("unchecked")
+    private final List<AuthToken>[] _slots = new List[SLOTS];
+    /** last tick swept */
+    private long _lastTick;
+    private Wheel _wheel;
+
+    public TokenStore(I2PAppContext ctx) {
+        _context = ctx;
+        _log = ctx.logManager().getLog(TokenStore.class);
+        _base = System.nanoTime();
+        synchronized (this) {
+            _wheel = new Wheel();
+        }
+    }
+
+    /**
+     * The raw token, from its Base64
+     */
+    static final class Key {
+        /** as net.i2p.data.Base64 encodes 32 bytes, with one '=' */
+        private static final int ENCODED_LENGTH = 44;
+        private static final String ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-~";
+        private static final byte[] DECODE = new byte[128];
+        static {
+            for (int i = 0; i < DECODE.length; i++) {
+                DECODE[i] = -1;
+            }
+            for (int i = 0; i < ALPHABET.length(); i++) {
+                DECODE[ALPHABET.charAt(i)] = (byte) i;
+            }
+        }
+
+        private final long a, b, c, d;
+
+        private Key(long a, long b, long c, long d) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+        }
+
+        /**
+         * Decodes without a byte array, the key is the only allocation.
+         *
+         * @return null if not the Base64 of 32 bytes
+         */
+        static Key parse(String s) {
+            if (s == null || s.length() != ENCODED_LENGTH || s.charAt(ENCODED_LENGTH - 1) != '=')
+                return null;
+            long a = 0, b = 0, c = 0, d = 0;
+            // 42 chars are 252 bits, the 43rd has the last 4 and 2 bits of padding
+            for (int i = 0; i < ENCODED_LENGTH - 1; i++) {
+                char ch = s.charAt(i);
+                int v = ch < DECODE.length ? DECODE[ch] : -1;
+                if (v < 0)
+                    return null;
+                int shift = 6;
+                if (i == ENCODED_LENGTH - 2) {
+                    if ((v & 0x03) != 0)
+                        return null;
+                    v >>>= 2;
+                    shift = 4;
+                }
+                a = (a << shift) | (b >>> (64 - shift));
+                b = (b << shift) | (c >>> (64 - shift));
+                c = (c << shift) | (d >>> (64 - shift));
+                d = (d << shift) | v;
+            }
+            return new Key(a, b, c, d);
+        }
+
+        @Override
+        public int hashCode() {
+            // the token is random, any bits will do
+            return (int) d;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return a == k.a && b == k.b && c == k.c && d == k.d;
+        }
+    }
+
+    /**
+     * @return null if not found
+     */
+    public AuthToken get(String id) {
+        Key key = Key.parse(id);
+        if (key == null)
+            return null;
+        return _tokens.get(key);
+    }
+
+    public synchronized void add(AuthToken token) {
+        _tokens.put(token.getKey(), token);
+        // the first tick at or after the deadline
+        long tick = (token.getDeadline() - _base + TICK_NS - 1) / TICK_NS;
+        if (tick <= _lastTick)
+            tick = _lastTick + 1;
+        int i = (int) (tick & MASK);
+        List<AuthToken> slot = _slots[i];
+        if (slot == null) {
+            slot = new ArrayList<AuthToken>(4);
+            _slots[i] = slot;
+        }
+        slot.add(token);
+    }
+
+    /**
+     * Its wheel slot is cleaned up when it comes around
+     */
+    public void remove(AuthToken token) {
+        _tokens.remove(token.getKey(), token);
+    }
+
+    public synchronized void clear() {
+        _tokens.clear();
+        for (int i = 0; i < SLOTS; i++) {
+            _slots[i] = null;
+        }
+    }
+
+    public int size() {
+        return _tokens.size();
+    }
+
+    /**
+     * Stop the wheel, and remove all tokens
+     */
+    public synchronized void stop() {
+        if (_wheel != null) {
+            _wheel.cancel();
+            _wheel = null;
+        }
+        clear();
+    }
+
+    /**
+     * Sweep the slots from the last tick up to now, at most a full turn
+     */
+    private synchronized void expire(long now) {
+        long tick = (now - _base) / TICK_NS;
+        int removed = 0;
+        for (long t = Math.max(_lastTick + 1, tick - MASK); t <= tick; t++) {
+            int i = (int) (t & MASK);
+            List<AuthToken> slot = _slots[i];
+            if (slot == null)
+                continue;
+            for (Iterator<AuthToken> iter = slot.iterator(); iter.hasNext(); ) {
+                AuthToken token = iter.next();
+                if (!token.isValid(now)) {
+                    iter.remove();
+                    if (_tokens.remove(token.getKey(), token))
+                        removed++;
+                }
+            }
+            if (slot.isEmpty())
+                _slots[i] = null;
+        }
+        _lastTick = Math.max(_lastTick, tick);
+        if (removed > 0 && _log.shouldDebug())
+            _log.debug("Expired " + removed + " tokens, " + _tokens.size() + " left");
+    }
+
+    private class Wheel extends SimpleTimer2.TimedEvent {
+        public Wheel() {
+            super(_context.simpleTimer2(), TICK);
+        }
+
+        public void timeReached() {
+            synchronized (TokenStore.this) {
+                if (_wheel != this)
+                    return;  // stopped
+            }
+            expire(System.nanoTime());
+            schedule(TICK);
+        }
+    }
+}
@@ -31,18 +31,15 @@ import net.i2p.i2pcontrol.servlets.jsonrpc2handlers.*;
 import net.i2p.i2pcontrol.servlets.configuration.ConfigurationManager;
 
 import javax.servlet.ServletException;
-import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.io.Writer;
 
 
 /**
@@ -55,6 +52,12 @@ public class JSONRPC2Servlet extends HttpServlet {
     private static final String SVC_HTTP_I2PCONTROL = "http_i2pcontrol";
     private static final String SVC_HTTPS_I2PCONTROL = "https_i2pcontrol";
     private Dispatcher disp;
+    private RouterInfoHandler _routerInfoHandler;
+    private GetRateHandler _getRateHandler;
+    private AuthenticateHandler _authenticateHandler;
+    private RouterManagerHandler _routerManagerHandler;
+    private RequestCapture _capture;
+    private RouterFacade _router;
     private Log _log;
     private final SecurityManager _secMan;
     private final ConfigurationManager _conf;
@@ -62,6 +65,24 @@ public class JSONRPC2Servlet extends HttpServlet {
     private final RouterContext _context;
     private final boolean _isWebapp;
     private boolean _isHTTP, _isHTTPS;
+    private int _maxBytes, _maxDepth, _maxStringLength, _maxMembers;
+
+    /** Request limits, see I2PControl.conf */
+    public static final String PROP_MAX_BYTES = "i2pcontrol.request.maxbytes";
+    public static final String PROP_MAX_DEPTH = "i2pcontrol.request.maxdepth";
+    public static final String PROP_MAX_STRING_LENGTH = "i2pcontrol.request.maxstringlength";
+    public static final String PROP_MAX_MEMBERS = "i2pcontrol.request.maxmembers";
+    private static final int DEFAULT_MAX_BYTES = 256 * 1024;
+    private static final int DEFAULT_MAX_DEPTH = 32;
+    private static final int DEFAULT_MAX_STRING_LENGTH = 32 * 1024;
+    private static final int DEFAULT_MAX_MEMBERS = 4096;
+
+    /** Request capture for the load tool, off if the file is empty, see RequestCapture */
+    public static final String PROP_CAPTURE_FILE = "i2pcontrol.capture.file";
+    public static final String PROP_CAPTURE_MAX_REQUESTS = "i2pcontrol.capture.maxrequests";
+    private static final int DEFAULT_CAPTURE_MAX_REQUESTS = 100000;
+    /** Without a router, answer from a SimulatedRouterFacade instead of failing */
+    public static final String PROP_SIMULATED_ROUTER = "i2pcontrol.router.simulated";
 
     /**
      *  Webapp
@@ -88,7 +109,7 @@ public class JSONRPC2Servlet extends HttpServlet {
     /**
      *  Plugin
      */
-    public JSONRPC2Servlet(RouterContext ctx, SecurityManager secMan) {
+    public JSONRPC2Servlet(RouterContext ctx, SecurityManager secMan, ConfigurationManager conf) {
         _context = ctx;
         _secMan = secMan;
         _helper = new JSONRPC2Helper(_secMan);
@@ -96,22 +117,51 @@ public class JSONRPC2Servlet extends HttpServlet {
             _log = ctx.logManager().getLog(JSONRPC2Servlet.class);
         else
             _log = I2PAppContext.getGlobalContext().logManager().getLog(JSONRPC2Servlet.class);
-        _conf = null;
+        _conf = conf;
         _isWebapp = false;
     }
 
     @Override
     public void init() throws ServletException {
         super.init();
+        _maxBytes = _conf.getConf(PROP_MAX_BYTES, DEFAULT_MAX_BYTES);
+        _maxDepth = _conf.getConf(PROP_MAX_DEPTH, DEFAULT_MAX_DEPTH);
+        _maxStringLength = _conf.getConf(PROP_MAX_STRING_LENGTH, DEFAULT_MAX_STRING_LENGTH);
+        _maxMembers = _conf.getConf(PROP_MAX_MEMBERS, DEFAULT_MAX_MEMBERS);
+        String capture = _conf.getConf(PROP_CAPTURE_FILE, "");
+        if (capture.length() > 0) {
+            I2PAppContext ctx = I2PAppContext.getGlobalContext();
+            File f = new File(capture);
+            if (!f.isAbsolute())
+                f = new File(ctx.getConfigDir(), capture);
+            try {
+                _capture = new RequestCapture(ctx, f, _conf.getConf(PROP_CAPTURE_MAX_REQUESTS,
+                                                                   DEFAULT_CAPTURE_MAX_REQUESTS));
+                _log.logAlways(Log.WARN, "Capturing requests to " + f);
+            } catch (IOException ioe) {
+                _log.error("Cannot capture requests to " + f, ioe);
+            }
+        }
+        if (_context != null) {
+            _router = new LiveRouterFacade(_context);
+        } else if (_conf.getConf(PROP_SIMULATED_ROUTER, false)) {
+            _router = new SimulatedRouterFacade(I2PAppContext.getGlobalContext());
+        }
         disp = new Dispatcher();
         disp.register(new EchoHandler(_helper));
-        disp.register(new GetRateHandler(_helper));
-        disp.register(new AuthenticateHandler(_helper, _secMan));
-        disp.register(new NetworkSettingHandler(_context, _helper));
-        disp.register(new RouterInfoHandler(_context, _helper));
-        disp.register(new RouterManagerHandler(_context, _helper));
-        disp.register(new I2PControlHandler(_context, _helper, _secMan));
-        disp.register(new AdvancedSettingsHandler(_context, _helper));
+        _getRateHandler = new GetRateHandler(_helper, _conf);
+        disp.register(_getRateHandler);
+        _authenticateHandler = new AuthenticateHandler(_helper, _secMan, _conf);
+        disp.register(_authenticateHandler);
+        ConfigVersions configVersions = _router != null ? new ConfigVersions(_router) : null;
+        disp.register(new NetworkSettingHandler(_router, _helper, configVersions));
+        _routerInfoHandler = new RouterInfoHandler(_router, _helper);
+        disp.register(_routerInfoHandler);
+        disp.register(new NetDbHandler(_router, _helper));
+        _routerManagerHandler = new RouterManagerHandler(_router, _helper);
+        disp.register(_routerManagerHandler);
+        disp.register(new I2PControlHandler(_router, _helper, _secMan));
+        disp.register(new AdvancedSettingsHandler(_router, _helper, configVersions));
         if (_isWebapp) {
             PortMapper pm = _context.portMapper();
             int port = pm.getPort(PortMapper.SVC_CONSOLE);
@@ -131,6 +181,18 @@ public class JSONRPC2Servlet extends HttpServlet {
 
     @Override
     public void destroy() {
+        if (_routerInfoHandler != null)
+            _routerInfoHandler.stopTimedEvents();
+        if (_getRateHandler != null)
+            _getRateHandler.stopTimedEvents();
+        if (_authenticateHandler != null)
+            _authenticateHandler.stopWorkers();
+        if (_routerManagerHandler != null)
+            _routerManagerHandler.stopJobs();
+        if (_capture != null)
+            _capture.close();
+        if (_router != null)
+            _router.stop();
         if (_isWebapp) {
             PortMapper pm = _context.portMapper();
             if (_isHTTP)
@@ -202,15 +264,33 @@ public class JSONRPC2Servlet extends HttpServlet {
             doPasswordChange(httpServletRequest, httpServletResponse);
             return;
         }
-        String req = getRequest(httpServletRequest.getInputStream());
         httpServletResponse.setContentType("application/json");
         PrintWriter out = httpServletResponse.getWriter();
+        String req = getRequest(httpServletRequest);
+        if (req == null) {
+            // don't even read it
+            out.println(new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.PARSE_ERROR.getCode(),
+                                             "Request exceeds " + _maxBytes + " bytes"), null));
+            out.close();
+            if (_log.shouldWarn())
+                _log.warn("Rejected oversized request from " + httpServletRequest.getRemoteAddr());
+            return;
+        }
         JSONRPC2Message msg = null;
         JSONRPC2Response jsonResp = null;
         try {
-            msg = JSONRPC2Message.parse(req);
+            // not thread safe, one per request
+            JSONRPC2Parser parser = new JSONRPC2Parser();
+            // no handler needs decimals at full precision
+            parser.lazyNumbers(true);
+            // params rarely have more than a few members
+            parser.compactObjects(true);
+            parser.setLimits(_maxBytes, _maxDepth, _maxStringLength, _maxMembers);
+            msg = parser.parseJSONRPC2Message(req);
 
             if (msg instanceof JSONRPC2Request) {
+                if (_capture != null)
+                    _capture.record((JSONRPC2Request) msg);
                 jsonResp = disp.process((JSONRPC2Request)msg, null);
                 jsonResp.toJSONObject().put("API", I2PControlVersion.API_VERSION);
                 if (_log.shouldDebug()) {
@@ -224,22 +304,40 @@ public class JSONRPC2Servlet extends HttpServlet {
                     _log.debug("Notification: " + msg);
             }
 
-            out.println(jsonResp);
+            if (jsonResp != null) {
+                // write it out as it is serialized, some results are streamed
+                jsonResp.toJSONObject().writeJSONString(out);
+                out.println();
+            } else {
+                out.println(jsonResp);
+            }
             out.close();
         } catch (JSONRPC2ParseException e) {
             _log.error("Unable to parse JSONRPC2Message: " + e.getMessage());
+            out.println(new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.PARSE_ERROR.getCode(),
+                                             e.getMessage()), null));
+            out.close();
         }
     }
 
-    private String getRequest(ServletInputStream sis) throws IOException {
-        Writer writer = new StringWriter();
-
-        BufferedReader reader = new BufferedReader(new InputStreamReader(sis, "UTF-8"));
-        char[] readBuffer = new char[BUFFER_LENGTH];
+    /**
+     *  Read the whole body, at most _maxBytes of it.
+     *
+     *  @return null if the body is larger than _maxBytes
+     */
+    private String getRequest(HttpServletRequest req) throws IOException {
+        int len = req.getContentLength();
+        if (len > _maxBytes)
+            return null;
+        InputStream in = req.getInputStream();
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(len > 0 ? len : BUFFER_LENGTH);
+        byte[] readBuffer = new byte[BUFFER_LENGTH];
         int n;
-        while ((n = reader.read(readBuffer)) != -1) {
-            writer.write(readBuffer, 0, n);
+        while ((n = in.read(readBuffer)) != -1) {
+            if (buf.size() + n > _maxBytes)
+                return null;
+            buf.write(readBuffer, 0, n);
         }
-        return writer.toString();
+        return buf.toString("UTF-8");
     }
 }
@@ -0,0 +1,135 @@
+package net.i2p.i2pcontrol.servlets;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.Log;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the requests we get, for replay by the load tool in bench/.
+ *
+ * One line per request: the ms since the previous request, the method
+ * as a JSON string and the params as JSON, separated by tabs.
+ * The Token is left out, and passwords are blanked. Of the router
+ * settings written with AdvancedSettings, only the sorted keys are kept,
+ * the values may be credentials too. The first line is FORMAT.
+ *
+ * Written out at most every FLUSH_INTERVAL.
+ * Stops after maxRequests, or when close() is called.
+ *
+ * @since 0.12
+ */
+class RequestCapture {
+
+    static final String FORMAT = "# I2PControl capture 2";
+    private static final String TOKEN = "Token";
+    private static final String[] SECRETS = { "Password", "i2pcontrol.password" };
+    /** maps of settings, replaced by their keys */
+    private static final String[] SETTINGS = { "set", "setAll" };
+    private static final long FLUSH_INTERVAL = 5*1000;
+
+    private final I2PAppContext _context;
+    private final Log _log;
+    private final File _file;
+    private final int _maxRequests;
+    // all below guarded by this
+    private Writer _out;
+    private long _last;
+    private long _lastFlush;
+    private int _count;
+
+    /**
+     * @param file appended to if it exists
+     */
+    public RequestCapture(I2PAppContext ctx, File file, int maxRequests) throws IOException {
+        _context = ctx;
+        _log = ctx.logManager().getLog(RequestCapture.class);
+        _file = file;
+        _maxRequests = maxRequests;
+        _out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+        _out.write(FORMAT);
+        _out.write('\n');
+    }
+
+    public void record(JSONRPC2Request req) {
+        Map<String, Object> params = req.getNamedParams();
+        Map<String, Object> copy;
+        if (params != null) {
+            copy = new HashMap<String, Object>(params);
+            copy.remove(TOKEN);
+            for (String s : SECRETS) {
+                if (copy.containsKey(s))
+                    copy.put(s, "");
+            }
+            for (String s : SETTINGS) {
+                Object o = copy.get(s);
+                if (o instanceof Map)
+                    copy.put(s, keys((Map<?, ?>) o));
+            }
+        } else {
+            copy = new HashMap<String, Object>(0);
+        }
+        String method = '"' + JSONValue.escape(req.getMethod()) + '"';
+        String json = JSONObject.toJSONString(copy);
+        synchronized (this) {
+            if (_out == null)
+                return;
+            long now = _context.clock().now();
+            long delta = _count > 0 ? Math.max(0, now - _last) : 0;
+            _last = now;
+            try {
+                _out.write(Long.toString(delta));
+                _out.write('\t');
+                _out.write(method);
+                _out.write('\t');
+                _out.write(json);
+                _out.write('\n');
+                if (now - _lastFlush > FLUSH_INTERVAL) {
+                    _out.flush();
+                    _lastFlush = now;
+                }
+            } catch (IOException ioe) {
+                _log.error("Request capture to " + _file + " failed", ioe);
+                close();
+                return;
+            }
+            if (++_count >= _maxRequests) {
+                if (_log.shouldWarn())
+                    _log.warn("Request capture to " + _file + " done, " + _count + " requests");
+                close();
+            }
+        }
+    }
+
+    private static List<String> keys(Map<?, ?> map) {
+        List<String> rv = new ArrayList<String>(map.size());
+        for (Object k : map.keySet()) {
+            rv.add(String.valueOf(k));
+        }
+        Collections.sort(rv);
+        return rv;
+    }
+
+    public synchronized void close() {
+        if (_out == null)
+            return;
+        try {
+            _out.close();
+        } catch (IOException ioe) {}
+        _out = null;
+    }
+}
@@ -7,26 +7,35 @@ import com.thetransactioncompany.jsonrpc2.server.MessageContext;
 import com.thetransactioncompany.jsonrpc2.server.RequestHandler;
 
 import net.i2p.I2PAppContext;
-import net.i2p.router.RouterContext;
 import net.i2p.util.Log;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
 public class AdvancedSettingsHandler implements RequestHandler {
 
-    private final RouterContext _context;
+    private final RouterFacade _router;
     private final Log _log;
     private final JSONRPC2Helper _helper;
+    private final ConfigVersions _configVersions;
     private static final String[] requiredArgs = {};
-
-    public AdvancedSettingsHandler(RouterContext ctx, JSONRPC2Helper helper) {
+    /** paged reads, with and without values */
+    private static final String[] PAGE_OPS = {"getPrefix", "getKeys"};
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     *  @param versions may be null if router is null
+     */
+    public AdvancedSettingsHandler(RouterFacade router, JSONRPC2Helper helper, ConfigVersions versions) {
         _helper = helper;
-        _context = ctx;
-        if (ctx != null)
-            _log = ctx.logManager().getLog(AdvancedSettingsHandler.class);
+        _router = router;
+        _configVersions = versions;
+        if (router != null)
+            _log = router.getContext().logManager().getLog(AdvancedSettingsHandler.class);
         else
             _log = I2PAppContext.getGlobalContext().logManager().getLog(AdvancedSettingsHandler.class);
     }
@@ -45,7 +54,7 @@ public class AdvancedSettingsHandler implements RequestHandler {
                 return new JSONRPC2Response(err, req.getID());
             }
 
-            if (_context == null) {
+            if (_router == null) {
                 return new JSONRPC2Response(new JSONRPC2Error(
                                                 JSONRPC2Error.INTERNAL_ERROR.getCode(),
                                                 "RouterContext was not initialized. Query failed"),
@@ -101,9 +110,48 @@ public class AdvancedSettingsHandler implements RequestHandler {
             }
 
             if (inParams.containsKey("getAll")) {
+                // version first, a change in between is returned again next time
+                outParams.put("Version", _configVersions.getVersion());
                 outParams.put("getAll", getAdvancedSettings());
             }
 
+            for (String op : PAGE_OPS) {
+                if (!inParams.containsKey(op))
+                    continue;
+                Object obj = inParams.get(op);
+                if (!(obj instanceof Map)) {
+                    JSONRPC2Error rpcErr = new JSONRPC2Error(JSONRPC2Error.INVALID_PARAMS.getCode(),
+                            "Value of \"" + op + "\" is not a Map");
+                    return new JSONRPC2Response(rpcErr, req.getID());
+                }
+                Map opMap = (Map) obj;
+                Object prefix = opMap.get("Prefix");
+                Object cursor = opMap.get("Cursor");
+                Object limit = opMap.get("Limit");
+                if ((prefix != null && !(prefix instanceof String)) ||
+                    (cursor != null && !(cursor instanceof String)) ||
+                    (limit != null && !(limit instanceof Number))) {
+                    JSONRPC2Error rpcErr = new JSONRPC2Error(JSONRPC2Error.INVALID_PARAMS.getCode(),
+                            "\"Prefix\" and \"Cursor\" must be strings, \"Limit\" a number");
+                    return new JSONRPC2Response(rpcErr, req.getID());
+                }
+                int max = DEFAULT_PAGE_SIZE;
+                if (limit != null)
+                    max = Math.max(1, Math.min(MAX_PAGE_SIZE, ((Number) limit).intValue()));
+                outParams.put(op, getPage(prefix != null ? (String) prefix : "", (String) cursor, max,
+                                          op.equals("getPrefix")));
+            }
+
+            if (inParams.containsKey("getChangedSince")) {
+                Object obj = inParams.get("getChangedSince");
+                if (!(obj instanceof Number)) {
+                    JSONRPC2Error rpcErr = new JSONRPC2Error(JSONRPC2Error.INVALID_PARAMS.getCode(),
+                            "Value of \"getChangedSince\" is not a version number");
+                    return new JSONRPC2Response(rpcErr, req.getID());
+                }
+                outParams.put("getChangedSince", getChangedSince(((Number) obj).longValue()));
+            }
+
             if (inParams.containsKey("set")) {
                 Object obj = inParams.get("set");
                 if (!(obj instanceof Map)) {
@@ -166,12 +214,61 @@ public class AdvancedSettingsHandler implements RequestHandler {
     }
 
     private String getAdvancedSetting(String key) {
-        return _context.router().getConfigSetting(key);
+        return _router.getConfigSetting(key);
     }
 
 
     private Map<String, String> getAdvancedSettings() {
-        return _context.router().getConfigMap();
+        return _router.getConfigMap();
+    }
+
+    /**
+     *  Version: the current version
+     *  NotModified: true if since is the current version, nothing else returned
+     *  Full: true if since is unknown or too old, Changed is then the whole config
+     *  Changed: keys added or changed since, with their values
+     *  Removed: keys removed since
+     *
+     *  @since 0.12
+     */
+    private Map<String, Object> getChangedSince(long since) {
+        ConfigVersions.Delta delta = _configVersions.getChangedSince(since);
+        Map<String, Object> rv = new HashMap<String, Object>(8);
+        rv.put("Version", delta.version);
+        if (!delta.full && delta.version == since) {
+            rv.put("NotModified", Boolean.TRUE);
+            return rv;
+        }
+        rv.put("Full", delta.full);
+        rv.put("Changed", delta.changed);
+        rv.put("Removed", delta.removed);
+        return rv;
+    }
+
+    /**
+     *  Version: the current version
+     *  Settings: key to value, in key order, for getPrefix
+     *  Keys: list of keys, in order, for getKeys
+     *  Cursor: pass it back for the next page, absent on the last page
+     *
+     *  @since 0.12
+     */
+    private Map<String, Object> getPage(String prefix, String cursor, int limit, boolean withValues) {
+        ConfigVersions.Page page = _configVersions.getPage(prefix, cursor, limit, withValues);
+        Map<String, Object> rv = new HashMap<String, Object>(8);
+        rv.put("Version", page.version);
+        if (withValues) {
+            Map<String, String> settings = new LinkedHashMap<String, String>(page.keys.size() * 2);
+            for (int i = 0; i < page.keys.size(); i++) {
+                settings.put(page.keys.get(i), page.values.get(i));
+            }
+            rv.put("Settings", settings);
+        } else {
+            rv.put("Keys", page.keys);
+        }
+        if (page.cursor != null)
+            rv.put("Cursor", page.cursor);
+        return rv;
     }
 
     private boolean checkTypes(Map<String, Object> newSettings) {
@@ -188,13 +285,15 @@ public class AdvancedSettingsHandler implements RequestHandler {
         Set<String> unsetKeys = null;
 
         if (clearConfig) {
-            unsetKeys = new HashSet<String>(_context.router().getConfigSettings());
+            unsetKeys = new HashSet<String>(_router.getConfigSettings());
 
             for (String key : newSettings.keySet()) {
                 unsetKeys.remove(key);
             }
         }
 
-        return _context.router().saveConfig(newSettings, unsetKeys);
+        boolean rv = _router.saveConfig(newSettings, unsetKeys);
+        _configVersions.changed();
+        return rv;
     }
 }
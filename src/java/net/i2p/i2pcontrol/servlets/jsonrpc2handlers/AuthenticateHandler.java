@@ -8,9 +8,20 @@ import com.thetransactioncompany.jsonrpc2.server.RequestHandler;
 import net.i2p.i2pcontrol.I2PControlVersion;
 import net.i2p.i2pcontrol.security.AuthToken;
 import net.i2p.i2pcontrol.security.SecurityManager;
+import net.i2p.i2pcontrol.servlets.configuration.ConfigurationManager;
+import net.i2p.util.I2PAppThread;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /*
  *  Copyright 2011 hottuna (dev@robertfoss.se)
@@ -34,10 +45,57 @@ public class AuthenticateHandler implements RequestHandler {
     private static final String[] requiredArgs = {"Password", "API"};
     private final JSONRPC2Helper _helper;
     private final SecurityManager _secMan;
+    /**
+     *  Checks the passwords, each is a BCrypt.
+     *  Bounded, so a burst of logins gets rejected instead of
+     *  holding all of the server's threads.
+     */
+    private final ThreadPoolExecutor _executor;
+
+    /** Password check threads and waiting logins, see I2PControl.conf */
+    public static final String PROP_AUTH_THREADS = "i2pcontrol.auth.threads";
+    public static final String PROP_AUTH_QUEUE = "i2pcontrol.auth.queue";
+    private static final int DEFAULT_AUTH_THREADS = 2;
+    private static final int DEFAULT_AUTH_QUEUE = 8;
+    /** longer than the queue takes to drain, unless the CPU is starved */
+    private static final long MAX_AUTH_WAIT = 10*1000;
 
     public AuthenticateHandler(JSONRPC2Helper helper, SecurityManager secMan) {
+        this(helper, secMan, DEFAULT_AUTH_THREADS, DEFAULT_AUTH_QUEUE);
+    }
+
+    /**
+     *  @since 0.12
+     */
+    public AuthenticateHandler(JSONRPC2Helper helper, SecurityManager secMan, ConfigurationManager conf) {
+        this(helper, secMan, conf.getConf(PROP_AUTH_THREADS, DEFAULT_AUTH_THREADS),
+             conf.getConf(PROP_AUTH_QUEUE, DEFAULT_AUTH_QUEUE));
+    }
+
+    private AuthenticateHandler(JSONRPC2Helper helper, SecurityManager secMan, int threads, int queue) {
         _helper = helper;
         _secMan = secMan;
+        threads = Math.max(1, threads);
+        _executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                                           new ArrayBlockingQueue<Runnable>(Math.max(1, queue)),
+                                           new AuthThreadFactory());
+        _executor.allowCoreThreadTimeOut(true);
+    }
+
+    private static class AuthThreadFactory implements ThreadFactory {
+        private int _count;
+
+        public synchronized Thread newThread(Runnable r) {
+            return new I2PAppThread(r, "I2PControl Auth " + (++_count), true);
+        }
+    }
+
+    /**
+     *  Stop the password check threads, waiting logins fail
+     *  @since 0.12
+     */
+    public void stopWorkers() {
+        _executor.shutdownNow();
     }
 
     // Reports the method names of the handled requests
@@ -54,20 +112,41 @@ public class AuthenticateHandler implements RequestHandler {
 
             Map<String, Object> inParams = req.getNamedParams();
 
-            String pwd = (String) inParams.get("Password");
+            final String pwd = (String) inParams.get("Password");
+
+            // before the expensive part
+            Object api = inParams.get("API");
+            err = validateAPIVersion(api);
+            if (err != null)
+                return new JSONRPC2Response(err, req.getID());
 
             // Try get an AuthToken
 
-            AuthToken token = _secMan.validatePasswd(pwd);
+            AuthToken token;
+            Future<AuthToken> future = null;
+            try {
+                future = _executor.submit(new Callable<AuthToken>() {
+                    public AuthToken call() {
+                        return _secMan.validatePasswd(pwd);
+                    }
+                });
+                token = future.get(MAX_AUTH_WAIT, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ree) {
+                return new JSONRPC2Response(JSONRPC2ExtendedError.AUTH_BUSY, req.getID());
+            } catch (TimeoutException te) {
+                future.cancel(true);
+                return new JSONRPC2Response(JSONRPC2ExtendedError.AUTH_BUSY, req.getID());
+            } catch (InterruptedException ie) {
+                future.cancel(true);
+                return new JSONRPC2Response(JSONRPC2ExtendedError.AUTH_BUSY, req.getID());
+            } catch (ExecutionException ee) {
+                return new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.INTERNAL_ERROR.getCode(),
+                                            "Password check failed: " + ee.getCause()), req.getID());
+            }
             if (token == null) {
                 return new JSONRPC2Response(JSONRPC2ExtendedError.INVALID_PASSWORD, req.getID());
             }
 
-            Object api = inParams.get("API");
-            err = validateAPIVersion(api);
-            if (err != null)
-                return new JSONRPC2Response(err, req.getID());
-
 
             Map<String, Object> outParams = new HashMap<String, Object>(4);
             outParams.put("Token", token.getId());
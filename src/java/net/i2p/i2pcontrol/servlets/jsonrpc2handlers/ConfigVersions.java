@@ -0,0 +1,266 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versions the router config, so AdvancedSettings can return only
+ * what changed since a version the client already has.
+ *
+ * The version goes up by one for every detected change. It starts at the
+ * clock time, so it also goes up across restarts, and a version from
+ * a previous run is always older than any we can diff against.
+ *
+ * Changes are detected by diffing the router's config map against the
+ * last one seen. That is done after every save made through I2PControl,
+ * see changed(), and on a read when router.config was modified or
+ * resized since, which catches saves by the console and others.
+ *
+ * For each key we keep the version it last changed, and for removed keys
+ * a tombstone. At most MAX_TOMBSTONES are kept. Pruning raises the floor,
+ * a client with an older version gets the full config.
+ *
+ * The snapshot also keeps its keys sorted, for paged prefix reads.
+ *
+ * @since 0.12
+ */
+public class ConfigVersions {
+
+    private static final int MAX_TOMBSTONES = 256;
+
+    private final RouterFacade _router;
+    // all below guarded by this
+    private long _version;
+    /** oldest version we can diff from */
+    private long _floor;
+    private Map<String, String> _last;
+    /** the keys of _last, sorted */
+    private String[] _sortedKeys;
+    /** key to version it last changed, including removed keys */
+    private final Map<String, Long> _changedAt = new HashMap<String, Long>();
+    private int _tombstones;
+    private long _fileModified;
+    private long _fileLength;
+
+    /**
+     * What changed since a version
+     */
+    static class Delta {
+        /** current version */
+        final long version;
+        /** the since version was too old or unknown, changed is the full config */
+        final boolean full;
+        /** added or changed keys and their values */
+        final Map<String, String> changed;
+        final List<String> removed;
+
+        Delta(long version, boolean full, Map<String, String> changed, List<String> removed) {
+            this.version = version;
+            this.full = full;
+            this.changed = changed;
+            this.removed = removed;
+        }
+    }
+
+    /**
+     * One page of a sorted read
+     */
+    static class Page {
+        final long version;
+        final List<String> keys;
+        /** null if not asked for */
+        final List<String> values;
+        /** last key returned, null if there are no more */
+        final String cursor;
+
+        Page(long version, List<String> keys, List<String> values, String cursor) {
+            this.version = version;
+            this.keys = keys;
+            this.values = values;
+            this.cursor = cursor;
+        }
+    }
+
+    public ConfigVersions(RouterFacade router) {
+        _router = router;
+        _version = router.getContext().clock().now();
+        _floor = _version;
+        setLast(new HashMap<String, String>(router.getConfigMap()));
+        File f = getFile();
+        if (f != null) {
+            _fileModified = f.lastModified();
+            _fileLength = f.length();
+        }
+    }
+
+    /**
+     * Call after saving the router config
+     */
+    public synchronized void changed() {
+        File f = getFile();
+        if (f != null) {
+            _fileModified = f.lastModified();
+            _fileLength = f.length();
+        }
+        diff();
+    }
+
+    /**
+     * @return the current version
+     */
+    public synchronized long getVersion() {
+        checkFile();
+        return _version;
+    }
+
+    /**
+     * @param since a version from getVersion() or getChangedSince()
+     * @return non-null, empty changed and removed if since is the current version
+     */
+    public synchronized Delta getChangedSince(long since) {
+        checkFile();
+        if (since < _floor || since > _version)
+            return new Delta(_version, true, new HashMap<String, String>(_last), new ArrayList<String>(0));
+        Map<String, String> changed = new HashMap<String, String>();
+        List<String> removed = new ArrayList<String>();
+        if (since < _version) {
+            for (Map.Entry<String, Long> e : _changedAt.entrySet()) {
+                if (e.getValue().longValue() <= since)
+                    continue;
+                String k = e.getKey();
+                String v = _last.get(k);
+                if (v != null)
+                    changed.put(k, v);
+                else
+                    removed.add(k);
+            }
+        }
+        return new Delta(_version, false, changed, removed);
+    }
+
+    /**
+     * The keys starting with prefix, in order, after cursor.
+     *
+     * @param prefix may be empty
+     * @param cursor the cursor of the previous page, or null for the first
+     * @param limit max keys returned
+     * @param withValues also return the values
+     */
+    public synchronized Page getPage(String prefix, String cursor, int limit, boolean withValues) {
+        checkFile();
+        String[] keys = _sortedKeys;
+        int i;
+        if (cursor != null && cursor.compareTo(prefix) >= 0) {
+            i = Arrays.binarySearch(keys, cursor);
+            i = i >= 0 ? i + 1 : -(i + 1);
+        } else {
+            i = Arrays.binarySearch(keys, prefix);
+            if (i < 0)
+                i = -(i + 1);
+        }
+        List<String> rk = new ArrayList<String>(Math.min(limit, 64));
+        List<String> rv = withValues ? new ArrayList<String>(Math.min(limit, 64)) : null;
+        for ( ; i < keys.length && rk.size() < limit; i++) {
+            String k = keys[i];
+            if (!k.startsWith(prefix))
+                break;
+            rk.add(k);
+            if (withValues)
+                rv.add(_last.get(k));
+        }
+        String next = null;
+        if (i < keys.length && keys[i].startsWith(prefix) && !rk.isEmpty())
+            next = rk.get(rk.size() - 1);
+        return new Page(_version, rk, rv, next);
+    }
+
+    /** caller must synch */
+    private void setLast(Map<String, String> config) {
+        _last = config;
+        String[] keys = config.keySet().toArray(new String[config.size()]);
+        Arrays.sort(keys);
+        _sortedKeys = keys;
+    }
+
+    /**
+     * @return null if the config is not kept in a file
+     */
+    private File getFile() {
+        String name = _router.getConfigFilename();
+        return name != null ? new File(name) : null;
+    }
+
+    /** caller must synch */
+    private void checkFile() {
+        File f = getFile();
+        if (f == null)
+            return;
+        long mod = f.lastModified();
+        long len = f.length();
+        if (mod != _fileModified || len != _fileLength) {
+            _fileModified = mod;
+            _fileLength = len;
+            diff();
+        }
+    }
+
+    /** caller must synch */
+    private void diff() {
+        Map<String, String> current = _router.getConfigMap();
+        long next = _version + 1;
+        boolean changed = false;
+        for (Map.Entry<String, String> e : current.entrySet()) {
+            String k = e.getKey();
+            String old = _last.get(k);
+            if (old == null || !old.equals(e.getValue())) {
+                Long prev = _changedAt.put(k, next);
+                if (old == null && prev != null)
+                    _tombstones--;  // re-added
+                changed = true;
+            }
+        }
+        for (String k : _last.keySet()) {
+            if (!current.containsKey(k)) {
+                _changedAt.put(k, next);
+                _tombstones++;
+                changed = true;
+            }
+        }
+        if (!changed)
+            return;
+        _version = next;
+        setLast(new HashMap<String, String>(current));
+        if (_tombstones > MAX_TOMBSTONES)
+            prune();
+    }
+
+    /**
+     * Drop the older half of the tombstones, and raise the floor past them
+     * caller must synch
+     */
+    private void prune() {
+        List<Long> versions = new ArrayList<Long>(_tombstones);
+        for (Map.Entry<String, Long> e : _changedAt.entrySet()) {
+            if (!_last.containsKey(e.getKey()))
+                versions.add(e.getValue());
+        }
+        Collections.sort(versions);
+        long cutoff = versions.get(versions.size() / 2).longValue();
+        for (Iterator<Map.Entry<String, Long>> iter = _changedAt.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<String, Long> e = iter.next();
+            if (e.getValue().longValue() <= cutoff && !_last.containsKey(e.getKey())) {
+                iter.remove();
+                _tombstones--;
+            }
+        }
+        // a client older than cutoff may have missed a removal
+        _floor = Math.max(_floor, cutoff);
+    }
+}
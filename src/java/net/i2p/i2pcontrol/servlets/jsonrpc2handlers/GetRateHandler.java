@@ -6,10 +6,21 @@ import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
 import com.thetransactioncompany.jsonrpc2.server.MessageContext;
 import com.thetransactioncompany.jsonrpc2.server.RequestHandler;
 import net.i2p.I2PAppContext;
+import net.i2p.i2pcontrol.servlets.configuration.ConfigurationManager;
 import net.i2p.stat.Rate;
 import net.i2p.stat.RateStat;
+import net.i2p.stat.StatManager;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONStreamAwareEx;
+import net.minidev.json.JSONStyle;
+import net.minidev.json.JSONValue;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /*
@@ -32,15 +43,55 @@ import java.util.Map;
 public class GetRateHandler implements RequestHandler {
 
     private static final String[] requiredArgs = {"Stat", "Period"};
+    private static final String[] bulkArgs = {"Stats", "Periods"};
+    private static final String[] historyArgs = {"Stats"};
+    private static final String WILDCARD = "*";
     private final JSONRPC2Helper _helper;
+    private final RateStatRegistry _createdStats;
+    private final StatIndex _index;
 
+    /** Limits on the stats created on request, see RateStatRegistry */
+    public static final String PROP_MAX_STATS = "i2pcontrol.stats.max";
+    public static final String PROP_MAX_STATS_PER_TOKEN = "i2pcontrol.stats.maxpertoken";
+    public static final String PROP_STATS_IDLE_MINUTES = "i2pcontrol.stats.idleminutes";
+    private static final int DEFAULT_MAX_STATS = 64;
+    private static final int DEFAULT_MAX_STATS_PER_TOKEN = 16;
+    private static final int DEFAULT_STATS_IDLE_MINUTES = 60;
+
+    /**
+     *  Default limits
+     */
     public GetRateHandler(JSONRPC2Helper helper) {
+        this(helper, DEFAULT_MAX_STATS, DEFAULT_MAX_STATS_PER_TOKEN, DEFAULT_STATS_IDLE_MINUTES);
+    }
+
+    /**
+     *  @since 0.12
+     */
+    public GetRateHandler(JSONRPC2Helper helper, ConfigurationManager conf) {
+        this(helper, conf.getConf(PROP_MAX_STATS, DEFAULT_MAX_STATS),
+             conf.getConf(PROP_MAX_STATS_PER_TOKEN, DEFAULT_MAX_STATS_PER_TOKEN),
+             conf.getConf(PROP_STATS_IDLE_MINUTES, DEFAULT_STATS_IDLE_MINUTES));
+    }
+
+    private GetRateHandler(JSONRPC2Helper helper, int maxStats, int maxPerToken, int idleMinutes) {
         _helper = helper;
+        _createdStats = new RateStatRegistry(I2PAppContext.getGlobalContext(), maxStats, maxPerToken,
+                                             idleMinutes * 60*1000L);
+        _index = new StatIndex(I2PAppContext.getGlobalContext());
+    }
+
+    /**
+     *  Stop the idle stat cleaner, and remove the stats we created
+     *  @since 0.12
+     */
+    public void stopTimedEvents() {
+        _createdStats.stop();
     }
 
     // Reports the method names of the handled requests
     public String[] handledRequests() {
-        return new String[] {"GetRate"};
+        return new String[] {"GetRate", "GetRates", "GetRateHistory", "ListStats"};
     }
 
     // Processes the requests
@@ -63,23 +114,338 @@ public class GetRateHandler implements RequestHandler {
                 return new JSONRPC2Response(JSONRPC2Error.INVALID_PARAMS, req.getID());
             }
 
-            RateStat rateStat = I2PAppContext.getGlobalContext().statManager().getRate(input);
-
-            // If RateStat or the requested period doesn't already exist, create them.
-            if (rateStat == null || rateStat.getRate(period) == null) {
-                long[] tempArr = new long[1];
-                tempArr[0] = period;
-                I2PAppContext.getGlobalContext().statManager().createRequiredRateStat(input, "I2PControl", "I2PControl", tempArr);
-                rateStat = I2PAppContext.getGlobalContext().statManager().getRate(input);
+            RateStat rateStat;
+            try {
+                // If RateStat or the requested period doesn't already exist, create them.
+                rateStat = _createdStats.get(input, period, (String) inParams.get("Token"));
+            } catch (RateStatRegistry.LimitException e) {
+                return invalid(e.getMessage(), req);
             }
-            if (rateStat.getRate(period) == null)
-                return new JSONRPC2Response(JSONRPC2Error.INTERNAL_ERROR, req.getID());
             Map<String, Object> outParams = new HashMap<String, Object>(4);
             Rate rate = rateStat.getRate(period);
-            rate.coalesce();
+            // As of the router's last coalesce, don't force it on the live Rate
             outParams.put("Result", rate.getAverageValue());
             return new JSONRPC2Response(outParams, req.getID());
+        } else if (req.getMethod().equals("GetRates")) {
+            return processBulk(req);
+        } else if (req.getMethod().equals("GetRateHistory")) {
+            return processHistory(req);
+        } else if (req.getMethod().equals("ListStats")) {
+            return processList(req);
         }
         return new JSONRPC2Response(JSONRPC2Error.METHOD_NOT_FOUND, req.getID());
     }
+
+    /**
+     *  Params:
+     *    Stats: list of stat names, or prefixes ending in "*", e.g. "bw.*"
+     *    Periods: list of periods in ms
+     *
+     *  Result: stat name to period to a map of
+     *    Average, EventCount, ExtremeAverage, LifetimeAverage, LastCoalesceDate.
+     *
+     *  As with GetRate, a stat or period asked for by exact name is created if it doesn't exist.
+     *  The ones that can't be are left out, and the reason is in Errors, stat name to message.
+     *  Periods a stat matched by prefix doesn't have are left out.
+     *
+     *  @since 0.12
+     */
+    private JSONRPC2Response processBulk(JSONRPC2Request req) {
+        JSONRPC2Error err = _helper.validateParams(bulkArgs, req);
+        if (err != null)
+            return new JSONRPC2Response(err, req.getID());
+
+        Map<String, Object> inParams = req.getNamedParams();
+        List<String> names = new ArrayList<String>();
+        List<String> prefixes = new ArrayList<String>();
+        Object o = inParams.get("Stats");
+        if (!(o instanceof List))
+            return invalid("\"Stats\" must be a list of stat names", req);
+        for (Object s : (List) o) {
+            if (!(s instanceof String))
+                return invalid("\"Stats\" must be a list of stat names", req);
+            String name = (String) s;
+            if (name.endsWith(WILDCARD))
+                prefixes.add(name.substring(0, name.length() - 1));
+            else
+                names.add(name);
+        }
+        o = inParams.get("Periods");
+        if (!(o instanceof List))
+            return invalid("\"Periods\" must be a list of periods", req);
+        List pl = (List) o;
+        long[] periods = new long[pl.size()];
+        for (int i = 0; i < periods.length; i++) {
+            Object p = pl.get(i);
+            if (!(p instanceof Number))
+                return invalid("\"Periods\" must be a list of periods", req);
+            periods[i] = ((Number) p).longValue();
+        }
+
+        StatManager sm = I2PAppContext.getGlobalContext().statManager();
+        String token = (String) inParams.get("Token");
+        Map<String, Object> result = new HashMap<String, Object>();
+        Map<String, Object> errors = null;
+        for (String name : names) {
+            if (result.containsKey(name))
+                continue;
+            RateStat rs = null;
+            for (long period : periods) {
+                try {
+                    rs = _createdStats.get(name, period, token);
+                } catch (RateStatRegistry.LimitException e) {
+                    if (errors == null)
+                        errors = new HashMap<String, Object>();
+                    errors.put(name, e.getMessage());
+                }
+            }
+            if (rs != null)
+                result.put(name, getRates(rs, periods));
+        }
+        if (!prefixes.isEmpty()) {
+            // one pass over all stats for all prefixes
+            for (String name : sm.getRateNames()) {
+                if (result.containsKey(name) || !startsWithAny(name, prefixes))
+                    continue;
+                RateStat rs = sm.getRate(name);
+                if (rs != null) {
+                    _createdStats.touch(name);
+                    result.put(name, getRates(rs, periods));
+                }
+            }
+        }
+        Map<String, Object> outParams = new HashMap<String, Object>(4);
+        outParams.put("Result", result);
+        if (errors != null)
+            outParams.put("Errors", errors);
+        return new JSONRPC2Response(outParams, req.getID());
+    }
+
+    /**
+     *  Params, all optional, a stat must match all given:
+     *    Prefix: start of the stat name
+     *    Substring: part of the stat name
+     *    Group: the stat's group, exactly
+     *
+     *  Result: Stats, stat name to Group, Description and Periods,
+     *  in name order.
+     *
+     *  @since 0.12
+     */
+    private JSONRPC2Response processList(JSONRPC2Request req) {
+        JSONRPC2Error err = _helper.validateParams(null, req);
+        if (err != null)
+            return new JSONRPC2Response(err, req.getID());
+
+        Map<String, Object> inParams = req.getNamedParams();
+        Object prefix = inParams.get("Prefix");
+        Object substring = inParams.get("Substring");
+        Object group = inParams.get("Group");
+        if ((prefix != null && !(prefix instanceof String)) ||
+            (substring != null && !(substring instanceof String)) ||
+            (group != null && !(group instanceof String)))
+            return invalid("\"Prefix\", \"Substring\" and \"Group\" must be strings", req);
+
+        List<RateStat> found = _index.find(_createdStats.getVersion(), (String) prefix,
+                                           (String) substring, (String) group);
+        Map<String, Object> stats = new LinkedHashMap<String, Object>(found.size() * 2);
+        for (RateStat rs : found) {
+            Map<String, Object> stat = new HashMap<String, Object>(4);
+            stat.put("Group", rs.getGroupName());
+            stat.put("Description", rs.getDescription());
+            long[] periods = rs.getPeriods();
+            List<Long> pl = new ArrayList<Long>(periods.length);
+            for (long p : periods) {
+                pl.add(p);
+            }
+            stat.put("Periods", pl);
+            stats.put(rs.getName(), stat);
+        }
+        Map<String, Object> outParams = new HashMap<String, Object>(4);
+        outParams.put("Stats", stats);
+        return new JSONRPC2Response(outParams, req.getID());
+    }
+
+    /**
+     *  Params:
+     *    Stats: list of stat names, or prefixes ending in "*"
+     *    Periods: optional list of periods in ms, default all periods of each stat
+     *
+     *  Result: array of objects, one per stat and period, with
+     *    Stat, Period,
+     *    Buckets: the last full period and the current one, oldest first,
+     *             each with Start, Total, Events, Average,
+     *    Extreme: the period with the highest total, with Total, Events, Average,
+     *    Lifetime: Total, Events, Periods, Average.
+     *
+     *  The result is not built here, it is written to the response as it is read
+     *  from the StatManager. Stats are never created.
+     *
+     *  @since 0.12
+     */
+    private JSONRPC2Response processHistory(JSONRPC2Request req) {
+        JSONRPC2Error err = _helper.validateParams(historyArgs, req);
+        if (err != null)
+            return new JSONRPC2Response(err, req.getID());
+
+        Map<String, Object> inParams = req.getNamedParams();
+        Object o = inParams.get("Stats");
+        if (!(o instanceof List))
+            return invalid("\"Stats\" must be a list of stat names", req);
+        List<String> names = new ArrayList<String>();
+        List<String> prefixes = new ArrayList<String>();
+        for (Object s : (List) o) {
+            if (!(s instanceof String))
+                return invalid("\"Stats\" must be a list of stat names", req);
+            String name = (String) s;
+            if (name.endsWith(WILDCARD))
+                prefixes.add(name.substring(0, name.length() - 1));
+            else if (!names.contains(name))
+                names.add(name);
+        }
+        long[] periods = null;
+        o = inParams.get("Periods");
+        if (o != null) {
+            if (!(o instanceof List))
+                return invalid("\"Periods\" must be a list of periods", req);
+            List pl = (List) o;
+            periods = new long[pl.size()];
+            for (int i = 0; i < periods.length; i++) {
+                Object p = pl.get(i);
+                if (!(p instanceof Number))
+                    return invalid("\"Periods\" must be a list of periods", req);
+                periods[i] = ((Number) p).longValue();
+            }
+        }
+        return new JSONRPC2Response(new RateHistory(names, prefixes, periods), req.getID());
+    }
+
+    /**
+     *  The GetRateHistory result, written element by element when serialized.
+     *
+     *  @since 0.12
+     */
+    private class RateHistory implements JSONStreamAwareEx {
+        private final List<String> _names;
+        private final List<String> _prefixes;
+        private final long[] _periods;
+
+        public RateHistory(List<String> names, List<String> prefixes, long[] periods) {
+            _names = names;
+            _prefixes = prefixes;
+            _periods = periods;
+        }
+
+        public void writeJSONString(Appendable out) throws IOException {
+            writeJSONString(out, JSONValue.COMPRESSION);
+        }
+
+        public void writeJSONString(Appendable out, JSONStyle compression) throws IOException {
+            StatManager sm = I2PAppContext.getGlobalContext().statManager();
+            boolean first = true;
+            compression.arrayStart(out);
+            for (String name : _names) {
+                RateStat rs = sm.getRate(name);
+                if (rs != null)
+                    first = write(rs, first, out, compression);
+            }
+            if (!_prefixes.isEmpty()) {
+                for (String name : sm.getRateNames()) {
+                    if (_names.contains(name) || !startsWithAny(name, _prefixes))
+                        continue;
+                    RateStat rs = sm.getRate(name);
+                    if (rs != null)
+                        first = write(rs, first, out, compression);
+                }
+            }
+            compression.arrayStop(out);
+        }
+
+        /** @return false if anything was written */
+        private boolean write(RateStat rs, boolean first, Appendable out, JSONStyle compression) throws IOException {
+            _createdStats.touch(rs.getName());
+            long[] periods = _periods != null ? _periods : rs.getPeriods();
+            for (long period : periods) {
+                Rate rate = rs.getRate(period);
+                if (rate == null)
+                    continue;
+                if (first) {
+                    first = false;
+                    compression.arrayfirstObject(out);
+                } else {
+                    compression.arrayNextElm(out);
+                }
+                JSONObject.writeJSON(getHistory(rs.getName(), rate), out, compression);
+                compression.arrayObjectEnd(out);
+            }
+            return first;
+        }
+    }
+
+    private static Map<String, Object> getHistory(String name, Rate rate) {
+        Map<String, Object> rv = new HashMap<String, Object>(8);
+        Map<String, Object> last = new HashMap<String, Object>(8);
+        Map<String, Object> current = new HashMap<String, Object>(8);
+        Map<String, Object> extreme = new HashMap<String, Object>(4);
+        Map<String, Object> lifetime = new HashMap<String, Object>(8);
+        synchronized (rate) {
+            long period = rate.getPeriod();
+            long start = rate.getLastCoalesceDate();
+            rv.put("Stat", name);
+            rv.put("Period", period);
+            last.put("Start", start - period);
+            last.put("Total", rate.getLastTotalValue());
+            last.put("Events", rate.getLastEventCount());
+            last.put("Average", rate.getAverageValue());
+            current.put("Start", start);
+            current.put("Total", rate.getCurrentTotalValue());
+            current.put("Events", rate.getCurrentEventCount());
+            long events = rate.getCurrentEventCount();
+            current.put("Average", events > 0 ? rate.getCurrentTotalValue() / events : 0.0d);
+            extreme.put("Total", rate.getExtremeTotalValue());
+            extreme.put("Events", rate.getExtremeEventCount());
+            extreme.put("Average", rate.getExtremeAverageValue());
+            lifetime.put("Total", rate.getLifetimeTotalValue());
+            lifetime.put("Events", rate.getLifetimeEventCount());
+            lifetime.put("Periods", rate.getLifetimePeriods());
+            lifetime.put("Average", rate.getLifetimeAverageValue());
+        }
+        rv.put("Buckets", Arrays.asList(last, current));
+        rv.put("Extreme", extreme);
+        rv.put("Lifetime", lifetime);
+        return rv;
+    }
+
+    private static Map<String, Object> getRates(RateStat rs, long[] periods) {
+        Map<String, Object> rv = new HashMap<String, Object>(periods.length * 2);
+        for (long period : periods) {
+            Rate rate = rs.getRate(period);
+            if (rate == null)
+                continue;
+            Map<String, Object> r = new HashMap<String, Object>(8);
+            // Snapshot under one lock so the values agree with each other.
+            // As of the router's last coalesce, don't force it on the live Rate.
+            synchronized (rate) {
+                r.put("Average", rate.getAverageValue());
+                r.put("EventCount", rate.getLastEventCount());
+                r.put("ExtremeAverage", rate.getExtremeAverageValue());
+                r.put("LifetimeAverage", rate.getLifetimeAverageValue());
+                r.put("LastCoalesceDate", rate.getLastCoalesceDate());
+            }
+            rv.put(Long.toString(period), r);
+        }
+        return rv;
+    }
+
+    private static boolean startsWithAny(String name, List<String> prefixes) {
+        for (String p : prefixes) {
+            if (name.startsWith(p))
+                return true;
+        }
+        return false;
+    }
+
+    private static JSONRPC2Response invalid(String msg, JSONRPC2Request req) {
+        return new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.INVALID_PARAMS.getCode(), msg), req.getID());
+    }
 }
@@ -10,7 +10,6 @@ import net.i2p.I2PAppContext;
 import net.i2p.i2pcontrol.I2PControlController;
 import net.i2p.i2pcontrol.security.SecurityManager;
 import net.i2p.i2pcontrol.servlets.configuration.ConfigurationManager;
-import net.i2p.router.RouterContext;
 import net.i2p.util.Log;
 
 import java.net.InetAddress;
@@ -39,18 +38,18 @@ public class I2PControlHandler implements RequestHandler {
 
     private static final int BW_BURST_PCT = 110;
     private static final int BW_BURST_TIME = 20;
-    private final RouterContext _context;
+    private final RouterFacade _router;
     private final Log _log;
     //private final ConfigurationManager _conf;
     private final SecurityManager _secMan;
     private final JSONRPC2Helper _helper;
 
-    public I2PControlHandler(RouterContext ctx, JSONRPC2Helper helper, SecurityManager secMan) {
+    public I2PControlHandler(RouterFacade router, JSONRPC2Helper helper, SecurityManager secMan) {
         _helper = helper;
         _secMan = secMan;
-        _context = ctx;
-        if (ctx != null)
-            _log = ctx.logManager().getLog(I2PControlHandler.class);
+        _router = router;
+        if (router != null)
+            _log = router.getContext().logManager().getLog(I2PControlHandler.class);
         else
             _log = I2PAppContext.getGlobalContext().logManager().getLog(I2PControlHandler.class);
     }
@@ -78,7 +77,7 @@ public class I2PControlHandler implements RequestHandler {
             return new JSONRPC2Response(err, req.getID());
 
 /**** only if we enable host/port changes
-        if (_context == null) {
+        if (_router == null) {
             return new JSONRPC2Response(
                        new JSONRPC2Error(JSONRPC2Error.INTERNAL_ERROR.getCode(),
                                          "RouterContext was not initialized. Query failed"),
@@ -93,6 +93,10 @@ public class JSONRPC2ExtendedError extends JSONRPC2Error {
     /** Invalid JSON-RPC 2.0, implementation defined error (-32099 .. -32000) */
     public static final JSONRPC2Error UNSUPPORTED_API_VERSION = new JSONRPC2ExtendedError(-32006, "The version of the I2PControl API specified is not supported by I2PControl.");
 
+    /** Invalid JSON-RPC 2.0, implementation defined error (-32099 .. -32000)
+     *  @since 0.12 */
+    public static final JSONRPC2Error AUTH_BUSY = new JSONRPC2ExtendedError(-32007, "Too many authentication requests, try again later.");
+
 
 
     /**
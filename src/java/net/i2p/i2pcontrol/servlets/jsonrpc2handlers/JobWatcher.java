@@ -0,0 +1,135 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.Log;
+import net.i2p.util.SimpleTimer2;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Finishes the jobs waiting on something the router runs in its own
+ * thread, like an update or a reseed, so no thread has to sit
+ * in a loop for each of them.
+ *
+ * The router has no way to register for those notifications,
+ * so one timer checks everything watched every CHECK_INTERVAL,
+ * passing the status on as job progress, and completes a job
+ * when its Watched is no longer in progress.
+ * The timer only runs while something is watched.
+ *
+ * @since 0.12
+ */
+class JobWatcher {
+
+    private static final long CHECK_INTERVAL = 1000;
+
+    private final I2PAppContext _context;
+    private final Log _log;
+    // all below guarded by this
+    private final List<Waiter> _waiters = new ArrayList<Waiter>(4);
+    private Checker _checker;
+
+    /**
+     * What a job waits on. Called from the timer thread.
+     */
+    public interface Watched {
+        public boolean isInProgress();
+
+        /** for the job progress */
+        public String getStatus();
+
+        /**
+         * Called once isInProgress() returns false
+         * @return the job result, must be a JSON type, may be null
+         */
+        public Object getResult();
+    }
+
+    private static class Waiter {
+        final Watched watched;
+        final RouterManagerJobs.Job job;
+
+        Waiter(Watched watched, RouterManagerJobs.Job job) {
+            this.watched = watched;
+            this.job = job;
+        }
+    }
+
+    public JobWatcher(I2PAppContext ctx) {
+        _context = ctx;
+        _log = ctx.logManager().getLog(JobWatcher.class);
+    }
+
+    /**
+     * Complete the job with watched.getResult() once it is
+     * no longer in progress. It must have been started.
+     */
+    public synchronized void watch(Watched watched, RouterManagerJobs.Job job) {
+        _waiters.add(new Waiter(watched, job));
+        if (_checker == null)
+            _checker = new Checker();
+    }
+
+    /**
+     * Fails whatever is still watched
+     */
+    public synchronized void stop() {
+        if (_checker != null) {
+            _checker.cancel();
+            _checker = null;
+        }
+        for (Waiter w : _waiters) {
+            w.job.fail("Stopped");
+        }
+        _waiters.clear();
+    }
+
+    /**
+     * A waiter whose check throws is failed and dropped,
+     * the others are still checked.
+     * Caller must synch.
+     */
+    private void check() {
+        for (Iterator<Waiter> iter = _waiters.iterator(); iter.hasNext(); ) {
+            Waiter w = iter.next();
+            try {
+                if (w.watched.isInProgress()) {
+                    w.job.setProgress(w.watched.getStatus());
+                } else {
+                    w.job.complete(w.watched.getResult());
+                    iter.remove();
+                }
+            } catch (RuntimeException re) {
+                _log.error("Job check failed", re);
+                w.job.fail(re.toString());
+                iter.remove();
+            }
+        }
+    }
+
+    private class Checker extends SimpleTimer2.TimedEvent {
+        public Checker() {
+            super(_context.simpleTimer2(), CHECK_INTERVAL);
+        }
+
+        public void timeReached() {
+            synchronized (JobWatcher.this) {
+                if (_checker != this)
+                    return;  // stopped
+                try {
+                    check();
+                } finally {
+                    // never leave _checker set without a timer, watch() wouldn't start another
+                    if (_checker == this) {
+                        if (_waiters.isEmpty())
+                            _checker = null;
+                        else
+                            schedule(CHECK_INTERVAL);
+                    }
+                }
+            }
+        }
+    }
+}
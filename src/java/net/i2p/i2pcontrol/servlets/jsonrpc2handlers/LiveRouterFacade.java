@@ -0,0 +1,220 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+import net.i2p.I2PAppContext;
+import net.i2p.app.ClientAppManager;
+import net.i2p.data.Hash;
+import net.i2p.data.router.RouterInfo;
+import net.i2p.router.Router;
+import net.i2p.router.RouterContext;
+import net.i2p.router.RouterVersion;
+import net.i2p.update.UpdateManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The router we run in.
+ *
+ * @since 0.12
+ */
+public class LiveRouterFacade implements RouterFacade {
+
+    private final RouterContext _context;
+    private final NetworkStatusEvaluator _statusEvaluator;
+
+    public LiveRouterFacade(RouterContext ctx) {
+        _context = ctx;
+        _statusEvaluator = new NetworkStatusEvaluator(ctx);
+    }
+
+    public I2PAppContext getContext() {
+        return _context;
+    }
+
+    /**
+     * Stop the network status timer
+     */
+    public void stop() {
+        _statusEvaluator.stop();
+    }
+
+    ////// RouterInfo
+
+    public String getVersion() {
+        try {
+            Class rvClass = Class.forName("net.i2p.router.RouterVersion");
+            java.lang.reflect.Field field = rvClass.getDeclaredField("FULL_VERSION");
+            return (String) field.get(new RouterVersion());
+        } catch (Exception e) {
+            return null; // Ignore
+        }
+    }
+
+    public long getUptime() {
+        Router router = _context.router();
+        if (router == null)
+            return 0;
+        return router.getUptime();
+    }
+
+    public String getTunnelStatus() {
+        return _context.throttle().getTunnelStatus();
+    }
+
+    public int getNetworkStatus() {
+        return _statusEvaluator.getStatus().ordinal();
+    }
+
+    public double getReceiveBps() {
+        return _context.bandwidthLimiter().getReceiveBps();
+    }
+
+    public double getSendBps() {
+        return _context.bandwidthLimiter().getSendBps();
+    }
+
+    public double getReceiveBps15s() {
+        return _context.bandwidthLimiter().getReceiveBps15s();
+    }
+
+    public double getSendBps15s() {
+        return _context.bandwidthLimiter().getSendBps15s();
+    }
+
+    public int getParticipatingTunnelCount() {
+        return _context.tunnelManager().getParticipatingCount();
+    }
+
+    public int getExploratoryInboundTunnelCount() {
+        return _context.tunnelManager().getFreeTunnelCount();
+    }
+
+    public int getExploratoryOutboundTunnelCount() {
+        return _context.tunnelManager().getOutboundTunnelCount();
+    }
+
+    public int getClientInboundTunnelCount() {
+        return _context.tunnelManager().getInboundClientTunnelCount();
+    }
+
+    public int getClientOutboundTunnelCount() {
+        return _context.tunnelManager().getOutboundClientTunnelCount();
+    }
+
+    public int getKnownRouterCount() {
+        return _context.netDb().getKnownRouters();
+    }
+
+    public int getActivePeerCount() {
+        return _context.commSystem().countActivePeers();
+    }
+
+    public int getFastPeerCount() {
+        return _context.profileOrganizer().countFastPeers();
+    }
+
+    public int getHighCapacityPeerCount() {
+        return _context.profileOrganizer().countHighCapacityPeers();
+    }
+
+    public int getJobQueueReadyCount() {
+        return _context.jobQueue().getReadyCount();
+    }
+
+    public long getJobQueueMaxLag() {
+        return _context.jobQueue().getMaxLag();
+    }
+
+    ////// NetDb
+
+    public RouterInfo getRouterInfo() {
+        return _context.router().getRouterInfo();
+    }
+
+    public Set<Hash> getAllRouters() {
+        return _context.netDb().getAllRouters();
+    }
+
+    public RouterInfo lookupRouterInfoLocally(Hash key) {
+        return _context.netDb().lookupRouterInfoLocally(key);
+    }
+
+    ////// Config
+
+    public String getProperty(String name) {
+        return _context.getProperty(name);
+    }
+
+    public String getProperty(String name, String defaultValue) {
+        return _context.getProperty(name, defaultValue);
+    }
+
+    public int getProperty(String name, int defaultValue) {
+        return _context.getProperty(name, defaultValue);
+    }
+
+    public String getConfigSetting(String name) {
+        return _context.router().getConfigSetting(name);
+    }
+
+    public Map<String, String> getConfigMap() {
+        return _context.router().getConfigMap();
+    }
+
+    public Set<String> getConfigSettings() {
+        return _context.router().getConfigSettings();
+    }
+
+    public boolean saveConfig(Map<String, String> toAdd, Collection<String> toRemove) {
+        return _context.router().saveConfig(toAdd, toRemove);
+    }
+
+    public String getConfigFilename() {
+        return _context.router().getConfigFilename();
+    }
+
+    public void reinitializeBandwidth() {
+        _context.bandwidthLimiter().reinitialize();
+    }
+
+    ////// RouterManager
+
+    public void shutdown(int exitCode) {
+        _context.addShutdownTask(new RouterManagerHandler.UpdateWrapperManagerTask(exitCode));
+        switch (exitCode) {
+            case Router.EXIT_GRACEFUL:
+                _context.router().shutdownGracefully();
+                break;
+            case Router.EXIT_GRACEFUL_RESTART:
+                _context.router().shutdownGracefully(Router.EXIT_GRACEFUL_RESTART);
+                break;
+            default:
+                _context.router().shutdown(exitCode);
+                break;
+        }
+    }
+
+    public boolean requestReseed() {
+        return _context.netDb().reseedChecker().requestReseed();
+    }
+
+    public boolean isReseedInProgress() {
+        return _context.netDb().reseedChecker().inProgress();
+    }
+
+    public String getReseedStatus() {
+        return _context.netDb().reseedChecker().getStatus();
+    }
+
+    public String getReseedError() {
+        return _context.netDb().reseedChecker().getError();
+    }
+
+    public UpdateManager getUpdateManager() {
+        ClientAppManager clmgr = I2PAppContext.getCurrentContext().clientAppManager();
+        if (clmgr == null)
+            return null;
+        return (UpdateManager) clmgr.getRegisteredApp(UpdateManager.APP_NAME);
+    }
+}
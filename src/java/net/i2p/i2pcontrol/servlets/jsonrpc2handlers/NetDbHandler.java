@@ -0,0 +1,251 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Error;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Request;
+import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
+import com.thetransactioncompany.jsonrpc2.server.MessageContext;
+import com.thetransactioncompany.jsonrpc2.server.RequestHandler;
+
+import net.i2p.data.Hash;
+import net.i2p.data.router.RouterAddress;
+import net.i2p.data.router.RouterInfo;
+import net.i2p.router.networkdb.kademlia.FloodfillNetworkDatabaseFacade;
+import net.i2p.util.VersionComparator;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONStreamAwareEx;
+import net.minidev.json.JSONStyle;
+import net.minidev.json.JSONValue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The RouterInfos in our NetDb, filtered, projected and paged.
+ *
+ * Params, all optional:
+ *   Caps: String, only routers having all these capabilities
+ *   MinVersion: String, only routers at this version or later
+ *   Floodfill: Boolean, only floodfills, or only non-floodfills
+ *   Fields: List of Strings, from FIELDS, default DEFAULT_FIELDS
+ *   Limit: max routers returned, default DEFAULT_LIMIT, max MAX_LIMIT
+ *   Cursor: String, the Cursor of the previous page
+ *
+ * Result:
+ *   Routers: List of Maps with the requested fields, in hash order
+ *   Cursor: pass it to get the next page, null if this was the last one
+ *
+ * The page is selected before the response is written, keeping only
+ * references to the RouterInfos. Each entry is converted when it is
+ * written to the response, so a page is never held as JSON in memory.
+ *
+ * @since 0.12
+ */
+public class NetDbHandler implements RequestHandler {
+
+    private static final String[] FIELDS = {"Hash", "Caps", "Version", "Published", "Floodfill",
+                                            "Bandwidth", "NetId", "Addresses"};
+    private static final List<String> DEFAULT_FIELDS = Arrays.asList("Hash", "Caps", "Version", "Published");
+    private static final int DEFAULT_LIMIT = 500;
+    private static final int MAX_LIMIT = 5000;
+
+    private final JSONRPC2Helper _helper;
+    private final RouterFacade _router;
+
+    public NetDbHandler(RouterFacade router, JSONRPC2Helper helper) {
+        _helper = helper;
+        _router = router;
+    }
+
+    // Reports the method names of the handled requests
+    public String[] handledRequests() {
+        return new String[] {"NetDb"};
+    }
+
+    // Processes the requests
+    public JSONRPC2Response process(JSONRPC2Request req, MessageContext ctx) {
+        if (req.getMethod().equals("NetDb")) {
+            return process(req);
+        } else {
+            // Method name not supported
+            return new JSONRPC2Response(JSONRPC2Error.METHOD_NOT_FOUND,
+                                        req.getID());
+        }
+    }
+
+    private JSONRPC2Response process(JSONRPC2Request req) {
+        JSONRPC2Error err = _helper.validateParams(null, req);
+        if (err != null)
+            return new JSONRPC2Response(err, req.getID());
+
+        if (_router == null) {
+            return new JSONRPC2Response(new JSONRPC2Error(
+                                            JSONRPC2Error.INTERNAL_ERROR.getCode(),
+                                            "RouterContext was not initialized. Query failed"),
+                                        req.getID());
+        }
+        Map<String, Object> inParams = req.getNamedParams();
+
+        Object o = inParams.get("Caps");
+        if (o != null && !(o instanceof String))
+            return invalid("\"Caps\" must be a string", req);
+        String caps = (String) o;
+        o = inParams.get("MinVersion");
+        if (o != null && !(o instanceof String))
+            return invalid("\"MinVersion\" must be a string", req);
+        String minVersion = (String) o;
+        o = inParams.get("Floodfill");
+        if (o != null && !(o instanceof Boolean))
+            return invalid("\"Floodfill\" must be a boolean", req);
+        Boolean floodfill = (Boolean) o;
+        o = inParams.get("Cursor");
+        if (o != null && !(o instanceof String))
+            return invalid("\"Cursor\" must be the Cursor of the previous page", req);
+        String cursor = (String) o;
+        int limit = DEFAULT_LIMIT;
+        o = inParams.get("Limit");
+        if (o != null) {
+            if (!(o instanceof Number) || ((Number) o).intValue() <= 0)
+                return invalid("\"Limit\" must be a positive number", req);
+            limit = Math.min(MAX_LIMIT, ((Number) o).intValue());
+        }
+        List<String> fields = DEFAULT_FIELDS;
+        o = inParams.get("Fields");
+        if (o != null) {
+            if (!(o instanceof List))
+                return invalid("\"Fields\" must be a list of: " + Arrays.toString(FIELDS), req);
+            fields = new ArrayList<String>();
+            for (Object f : (List) o) {
+                if (!(f instanceof String) || !Arrays.asList(FIELDS).contains(f))
+                    return invalid("\"Fields\" must be a list of: " + Arrays.toString(FIELDS), req);
+                fields.add((String) f);
+            }
+        }
+
+        // hash order, so the cursor is simply the last hash returned
+        Set<Hash> all = _router.getAllRouters();
+        List<Hash> hashes = new ArrayList<Hash>(all.size());
+        for (Hash h : all) {
+            if (cursor == null || h.toBase64().compareTo(cursor) > 0)
+                hashes.add(h);
+        }
+        Collections.sort(hashes, new HashComparator());
+        List<RouterInfo> page = new ArrayList<RouterInfo>(Math.min(limit, hashes.size()));
+        String next = null;
+        Hash last = null;
+        for (Hash h : hashes) {
+            RouterInfo ri = _router.lookupRouterInfoLocally(h);
+            if (ri == null || !matches(ri, caps, minVersion, floodfill))
+                continue;
+            if (page.size() >= limit) {
+                next = last.toBase64();
+                break;
+            }
+            page.add(ri);
+            last = h;
+        }
+
+        Map<String, Object> outParams = new HashMap<String, Object>(4);
+        outParams.put("Routers", new RouterList(page, fields));
+        outParams.put("Cursor", next);
+        return new JSONRPC2Response(outParams, req.getID());
+    }
+
+    private static boolean matches(RouterInfo ri, String caps, String minVersion, Boolean floodfill) {
+        String riCaps = ri.getCapabilities();
+        if (caps != null) {
+            for (int i = 0; i < caps.length(); i++) {
+                if (riCaps.indexOf(caps.charAt(i)) < 0)
+                    return false;
+            }
+        }
+        if (minVersion != null && VersionComparator.comp(ri.getVersion(), minVersion) < 0)
+            return false;
+        if (floodfill != null &&
+            floodfill.booleanValue() != (riCaps.indexOf(FloodfillNetworkDatabaseFacade.CAPABILITY_FLOODFILL) >= 0))
+            return false;
+        return true;
+    }
+
+    private static class HashComparator implements Comparator<Hash> {
+        public int compare(Hash l, Hash r) {
+            return l.toBase64().compareTo(r.toBase64());
+        }
+    }
+
+    /**
+     *  The Routers result, each entry converted as it is written.
+     */
+    private static class RouterList implements JSONStreamAwareEx {
+        private final List<RouterInfo> _routers;
+        private final List<String> _fields;
+
+        public RouterList(List<RouterInfo> routers, List<String> fields) {
+            _routers = routers;
+            _fields = fields;
+        }
+
+        public void writeJSONString(Appendable out) throws IOException {
+            writeJSONString(out, JSONValue.COMPRESSION);
+        }
+
+        public void writeJSONString(Appendable out, JSONStyle compression) throws IOException {
+            compression.arrayStart(out);
+            boolean first = true;
+            for (RouterInfo ri : _routers) {
+                if (first) {
+                    first = false;
+                    compression.arrayfirstObject(out);
+                } else {
+                    compression.arrayNextElm(out);
+                }
+                JSONObject.writeJSON(toMap(ri, _fields), out, compression);
+                compression.arrayObjectEnd(out);
+            }
+            compression.arrayStop(out);
+        }
+    }
+
+    private static Map<String, Object> toMap(RouterInfo ri, List<String> fields) {
+        Map<String, Object> rv = new HashMap<String, Object>(fields.size() * 2);
+        for (String f : fields) {
+            if (f.equals("Hash")) {
+                rv.put(f, ri.getIdentity().calculateHash().toBase64());
+            } else if (f.equals("Caps")) {
+                rv.put(f, ri.getCapabilities());
+            } else if (f.equals("Version")) {
+                rv.put(f, ri.getVersion());
+            } else if (f.equals("Published")) {
+                rv.put(f, ri.getPublished());
+            } else if (f.equals("Floodfill")) {
+                rv.put(f, ri.getCapabilities().indexOf(FloodfillNetworkDatabaseFacade.CAPABILITY_FLOODFILL) >= 0);
+            } else if (f.equals("Bandwidth")) {
+                rv.put(f, ri.getBandwidthTier());
+            } else if (f.equals("NetId")) {
+                rv.put(f, ri.getNetworkId());
+            } else if (f.equals("Addresses")) {
+                List<Map<String, Object>> addrs = new ArrayList<Map<String, Object>>(ri.getAddressCount());
+                for (RouterAddress ra : ri.getAddresses()) {
+                    Map<String, Object> a = new HashMap<String, Object>(8);
+                    a.put("Transport", ra.getTransportStyle());
+                    a.put("Host", ra.getHost());
+                    a.put("Port", ra.getPort());
+                    a.put("Cost", ra.getCost());
+                    addrs.add(a);
+                }
+                rv.put(f, addrs);
+            }
+        }
+        return rv;
+    }
+
+    private static JSONRPC2Response invalid(String msg, JSONRPC2Request req) {
+        return new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.INVALID_PARAMS.getCode(), msg), req.getID());
+    }
+}
@@ -8,7 +8,6 @@ import com.thetransactioncompany.jsonrpc2.server.RequestHandler;
 
 import net.i2p.I2PAppContext;
 import net.i2p.router.Router;
-import net.i2p.router.RouterContext;
 import net.i2p.router.transport.FIFOBandwidthRefiller;
 import net.i2p.router.transport.TransportManager;
 import net.i2p.router.transport.ntcp.NTCPTransport;
@@ -41,11 +40,16 @@ public class NetworkSettingHandler implements RequestHandler {
     private static final int BW_BURST_PCT = 110;
     private static final int BW_BURST_TIME = 20;
     private final JSONRPC2Helper _helper;
-    private final RouterContext _context;
+    private final RouterFacade _router;
+    private final ConfigVersions _configVersions;
 
-    public NetworkSettingHandler(RouterContext ctx, JSONRPC2Helper helper) {
+    /**
+     *  @param versions may be null if router is null
+     */
+    public NetworkSettingHandler(RouterFacade router, JSONRPC2Helper helper, ConfigVersions versions) {
         _helper = helper;
-        _context = ctx;
+        _router = router;
+        _configVersions = versions;
     }
 
     // Reports the method names of the handled requests
@@ -69,7 +73,7 @@ public class NetworkSettingHandler implements RequestHandler {
         if (err != null)
             return new JSONRPC2Response(err, req.getID());
 
-        if (_context == null) {
+        if (_router == null) {
             return new JSONRPC2Response(
                        new JSONRPC2Error(JSONRPC2Error.INTERNAL_ERROR.getCode(),
                                          "RouterContext was not initialized. Query failed"),
@@ -80,10 +84,13 @@ public class NetworkSettingHandler implements RequestHandler {
 
         boolean restartNeeded = false;
         boolean settingsSaved = false;
+        boolean reinitBandwidth = false;
+        // Everything is validated before anything is saved, then written at once
+        Map<String, String> changes = new HashMap<String, String>();
         String inParam;
 
         if (inParams.containsKey("i2p.router.net.ntcp.port")) {
-            String oldNTCPPort = _context.getProperty(NTCPTransport.PROP_I2NP_NTCP_PORT);
+            String oldNTCPPort = _router.getProperty(NTCPTransport.PROP_I2NP_NTCP_PORT);
             if ((inParam = (String) inParams.get("i2p.router.net.ntcp.port")) != null) {
                 if (oldNTCPPort == null || !oldNTCPPort.equals(inParam.trim())) {
                     Integer newPort;
@@ -98,18 +105,16 @@ public class NetworkSettingHandler implements RequestHandler {
                                                      "\"i2p.router.net.ntcp.port\" must be a string representing a number in the range 1-65535. " + inParam + " isn't valid."),
                                    req.getID());
                     }
-                    Map<String, String> config = new HashMap<String, String>();
-                    config.put(NTCPTransport.PROP_I2NP_NTCP_PORT, String.valueOf(newPort));
-                    config.put(NTCPTransport.PROP_I2NP_NTCP_AUTO_PORT, "false");
-                    _context.router().saveConfig(config, null);
+                    changes.put(NTCPTransport.PROP_I2NP_NTCP_PORT, String.valueOf(newPort));
+                    changes.put(NTCPTransport.PROP_I2NP_NTCP_AUTO_PORT, "false");
                     restartNeeded = true;
                 }
                 settingsSaved = true;
             } else {
-                String sAutoPort = _context.getProperty(NTCPTransport.PROP_I2NP_NTCP_AUTO_PORT, "true");
+                String sAutoPort = _router.getProperty(NTCPTransport.PROP_I2NP_NTCP_AUTO_PORT, "true");
                 boolean oldAutoPort = "true".equalsIgnoreCase(sAutoPort);
                 if (oldAutoPort) {
-                    String oldSSUPort = "" + _context.getProperty(UDPTransport.PROP_INTERNAL_PORT, 8887);
+                    String oldSSUPort = "" + _router.getProperty(UDPTransport.PROP_INTERNAL_PORT, 8887);
                     outParams.put("i2p.router.net.ntcp.port", oldSSUPort);
                 } else {
                     outParams.put("i2p.router.net.ntcp.port", oldNTCPPort);
@@ -118,10 +123,10 @@ public class NetworkSettingHandler implements RequestHandler {
         }
 
         if (inParams.containsKey("i2p.router.net.ntcp.hostname")) {
-            String oldNTCPHostname = _context.getProperty(NTCPTransport.PROP_I2NP_NTCP_HOSTNAME);
+            String oldNTCPHostname = _router.getProperty(NTCPTransport.PROP_I2NP_NTCP_HOSTNAME);
             if ((inParam = (String) inParams.get("i2p.router.net.ntcp.hostname")) != null) {
                 if (oldNTCPHostname == null || !oldNTCPHostname.equals(inParam.trim())) {
-                    _context.router().saveConfig(NTCPTransport.PROP_I2NP_NTCP_HOSTNAME, inParam);
+                    changes.put(NTCPTransport.PROP_I2NP_NTCP_HOSTNAME, inParam);
                     restartNeeded = true;
                 }
                 settingsSaved = true;
@@ -131,12 +136,12 @@ public class NetworkSettingHandler implements RequestHandler {
         }
 
         if (inParams.containsKey("i2p.router.net.ntcp.autoip")) {
-            String oldNTCPAutoIP = _context.getProperty(NTCPTransport.PROP_I2NP_NTCP_AUTO_IP);
+            String oldNTCPAutoIP = _router.getProperty(NTCPTransport.PROP_I2NP_NTCP_AUTO_IP);
             if ((inParam = (String) inParams.get("i2p.router.net.ntcp.autoip")) != null) {
                 inParam = inParam.trim().toLowerCase();
                 if (oldNTCPAutoIP == null || !oldNTCPAutoIP.equals(inParam)) {
                     if ("always".equals(inParam) || "true".equals(inParam) || "false".equals(inParam)) {
-                        _context.router().saveConfig(NTCPTransport.PROP_I2NP_NTCP_AUTO_IP, inParam);
+                        changes.put(NTCPTransport.PROP_I2NP_NTCP_AUTO_IP, inParam);
                         restartNeeded = true;
                     } else {
                         return new JSONRPC2Response(
@@ -152,7 +157,7 @@ public class NetworkSettingHandler implements RequestHandler {
         }
 
         if (inParams.containsKey("i2p.router.net.ssu.port")) {
-            String oldSSUPort = "" + _context.getProperty(UDPTransport.PROP_INTERNAL_PORT, 8887);
+            String oldSSUPort = "" + _router.getProperty(UDPTransport.PROP_INTERNAL_PORT, 8887);
             if ((inParam = (String) inParams.get("i2p.router.net.ssu.port")) != null) {
                 if (oldSSUPort == null || !oldSSUPort.equals(inParam.trim())) {
                     Integer newPort;
@@ -167,10 +172,8 @@ public class NetworkSettingHandler implements RequestHandler {
                                                      "\"i2p.router.net.ssu.port\" must be a string representing a number in the range 1-65535. " + inParam + " isn't valid."),
                                    req.getID());
                     }
-                    Map<String, String> config = new HashMap<String, String>();
-                    config.put(UDPTransport.PROP_EXTERNAL_PORT, String.valueOf(newPort));
-                    config.put(UDPTransport.PROP_INTERNAL_PORT, String.valueOf(newPort));
-                    _context.router().saveConfig(config, null);
+                    changes.put(UDPTransport.PROP_EXTERNAL_PORT, String.valueOf(newPort));
+                    changes.put(UDPTransport.PROP_INTERNAL_PORT, String.valueOf(newPort));
                     restartNeeded = true;
                 }
                 settingsSaved = true;
@@ -180,10 +183,10 @@ public class NetworkSettingHandler implements RequestHandler {
         }
 
         if (inParams.containsKey("i2p.router.net.ssu.hostname")) {
-            String oldSSUHostname = _context.getProperty(UDPTransport.PROP_EXTERNAL_HOST);
+            String oldSSUHostname = _router.getProperty(UDPTransport.PROP_EXTERNAL_HOST);
             if ((inParam = (String) inParams.get("i2p.router.net.ssu.hostname")) != null) {
                 if (oldSSUHostname == null || !oldSSUHostname.equals(inParam.trim())) {
-                    _context.router().saveConfig(UDPTransport.PROP_EXTERNAL_HOST, inParam);
+                    changes.put(UDPTransport.PROP_EXTERNAL_HOST, inParam);
                     restartNeeded = true;
                 }
                 settingsSaved = true;
@@ -193,12 +196,12 @@ public class NetworkSettingHandler implements RequestHandler {
         }
 
         if (inParams.containsKey("i2p.router.net.ssu.autoip")) {
-            String oldSSUAutoIP =  _context.getProperty(UDPTransport.PROP_SOURCES);
+            String oldSSUAutoIP =  _router.getProperty(UDPTransport.PROP_SOURCES);
             if ((inParam = (String) inParams.get("i2p.router.net.ssu.autoip")) != null) {
                 inParam = inParam.trim().toLowerCase();
                 if (oldSSUAutoIP == null || !oldSSUAutoIP.equals(inParam)) {
                     if (inParam.equals("ssu") || inParam.equals("local,ssu") || inParam.equals("upnp,ssu") || inParam.equals("local,upnp,ssu")) {
-                        _context.router().saveConfig(UDPTransport.PROP_SOURCES, inParam);
+                        changes.put(UDPTransport.PROP_SOURCES, inParam);
                         restartNeeded = true;
                     } else {
                         return new JSONRPC2Response(
@@ -216,7 +219,7 @@ public class NetworkSettingHandler implements RequestHandler {
         // Non-setable key.
         if (inParams.containsKey("i2p.router.net.ssu.detectedip")) {
             if ((inParam = (String) inParams.get("i2p.router.net.ssu.autoip")) == null) {
-                byte[] ipBytes = _context.router().getRouterInfo().getTargetAddress("SSU").getIP();
+                byte[] ipBytes = _router.getRouterInfo().getTargetAddress("SSU").getIP();
                 try {
                     InetAddress i = InetAddress.getByAddress(ipBytes);
                     outParams.put("i2p.router.net.ssu.detectedip", i.getHostAddress());
@@ -227,10 +230,10 @@ public class NetworkSettingHandler implements RequestHandler {
         }
 
         if (inParams.containsKey("i2p.router.net.upnp")) {
-            String oldUPNP = _context.getProperty(TransportManager.PROP_ENABLE_UPNP);
+            String oldUPNP = _router.getProperty(TransportManager.PROP_ENABLE_UPNP);
             if ((inParam = (String) inParams.get("i2p.router.net.upnp")) != null) {
                 if (oldUPNP == null || !oldUPNP.equals(inParam.trim())) {
-                    _context.router().saveConfig(TransportManager.PROP_ENABLE_UPNP, inParam);
+                    changes.put(TransportManager.PROP_ENABLE_UPNP, inParam);
                     restartNeeded = true;
                 }
                 settingsSaved = true;
@@ -240,7 +243,7 @@ public class NetworkSettingHandler implements RequestHandler {
         }
 
         if (inParams.containsKey("i2p.router.net.bw.share")) {
-            String oldShare = _context.router().getConfigSetting(Router.PROP_BANDWIDTH_SHARE_PERCENTAGE);
+            String oldShare = _router.getConfigSetting(Router.PROP_BANDWIDTH_SHARE_PERCENTAGE);
             if ((inParam = (String) inParams.get("i2p.router.net.bw.share")) != null) {
                 if (oldShare == null || !oldShare.equals(inParam.trim())) {
                     Integer percent;
@@ -255,7 +258,7 @@ public class NetworkSettingHandler implements RequestHandler {
                                                      "\"i2p.router.net.bw.share\" A positive integer must supplied, \"" + inParam + "\" isn't valid"),
                                    req.getID());
                     }
-                    _context.router().saveConfig(Router.PROP_BANDWIDTH_SHARE_PERCENTAGE, inParam);
+                    changes.put(Router.PROP_BANDWIDTH_SHARE_PERCENTAGE, inParam);
                 }
                 settingsSaved = true;
             } else {
@@ -264,7 +267,7 @@ public class NetworkSettingHandler implements RequestHandler {
         }
 
         if (inParams.containsKey("i2p.router.net.bw.in")) {
-            String oldBWIn = _context.getProperty(FIFOBandwidthRefiller.PROP_INBOUND_BANDWIDTH);
+            String oldBWIn = _router.getProperty(FIFOBandwidthRefiller.PROP_INBOUND_BANDWIDTH);
             if ((inParam = (String) inParams.get("i2p.router.net.bw.in")) != null) {
                 Integer rate;
                 try {
@@ -281,12 +284,10 @@ public class NetworkSettingHandler implements RequestHandler {
                 Integer burstRate = (rate * BW_BURST_PCT) / 100;
                 Integer burstSize = (burstRate * BW_BURST_TIME);
                 if (oldBWIn == null || !oldBWIn.equals(rate.toString())) {
-                    Map<String, String> config = new HashMap<String, String>();
-                    config.put(FIFOBandwidthRefiller.PROP_INBOUND_BANDWIDTH, rate.toString());
-                    config.put(FIFOBandwidthRefiller.PROP_INBOUND_BURST_BANDWIDTH, burstRate.toString());
-                    config.put(FIFOBandwidthRefiller.PROP_INBOUND_BANDWIDTH_PEAK, burstSize.toString());
-                    _context.router().saveConfig(config, null);
-                    _context.bandwidthLimiter().reinitialize();
+                    changes.put(FIFOBandwidthRefiller.PROP_INBOUND_BANDWIDTH, rate.toString());
+                    changes.put(FIFOBandwidthRefiller.PROP_INBOUND_BURST_BANDWIDTH, burstRate.toString());
+                    changes.put(FIFOBandwidthRefiller.PROP_INBOUND_BANDWIDTH_PEAK, burstSize.toString());
+                    reinitBandwidth = true;
                 }
                 settingsSaved = true;
             } else {
@@ -294,7 +295,7 @@ public class NetworkSettingHandler implements RequestHandler {
             }
         }
         if (inParams.containsKey("i2p.router.net.bw.out")) {
-            String oldBWOut = _context.getProperty(FIFOBandwidthRefiller.PROP_OUTBOUND_BANDWIDTH);
+            String oldBWOut = _router.getProperty(FIFOBandwidthRefiller.PROP_OUTBOUND_BANDWIDTH);
             if ((inParam = (String) inParams.get("i2p.router.net.bw.out")) != null) {
                 Integer rate;
                 try {
@@ -310,12 +311,10 @@ public class NetworkSettingHandler implements RequestHandler {
                 Integer burstRate = (rate * BW_BURST_PCT) / 100;
                 Integer burstSize = (burstRate * BW_BURST_TIME);
                 if (oldBWOut == null || !oldBWOut.equals(rate.toString())) {
-                    Map<String, String> config = new HashMap<String, String>();
-                    config.put(FIFOBandwidthRefiller.PROP_OUTBOUND_BANDWIDTH, rate.toString());
-                    config.put(FIFOBandwidthRefiller.PROP_OUTBOUND_BURST_BANDWIDTH, burstRate.toString());
-                    config.put(FIFOBandwidthRefiller.PROP_OUTBOUND_BANDWIDTH_PEAK, burstSize.toString());
-                    _context.router().saveConfig(config, null);
-                    _context.bandwidthLimiter().reinitialize();
+                    changes.put(FIFOBandwidthRefiller.PROP_OUTBOUND_BANDWIDTH, rate.toString());
+                    changes.put(FIFOBandwidthRefiller.PROP_OUTBOUND_BURST_BANDWIDTH, burstRate.toString());
+                    changes.put(FIFOBandwidthRefiller.PROP_OUTBOUND_BANDWIDTH_PEAK, burstSize.toString());
+                    reinitBandwidth = true;
                 }
                 settingsSaved = true;
             } else {
@@ -323,10 +322,10 @@ public class NetworkSettingHandler implements RequestHandler {
             }
         }
         if (inParams.containsKey("i2p.router.net.laptopmode")) {
-            String oldLaptopMode = _context.getProperty(UDPTransport.PROP_LAPTOP_MODE);
+            String oldLaptopMode = _router.getProperty(UDPTransport.PROP_LAPTOP_MODE);
             if ((inParam = (String) inParams.get("i2p.router.net.laptopmode")) != null) {
                 if (oldLaptopMode == null || !oldLaptopMode.equals(inParam.trim())) {
-                    _context.router().saveConfig(UDPTransport.PROP_LAPTOP_MODE, String.valueOf(inParam));
+                    changes.put(UDPTransport.PROP_LAPTOP_MODE, String.valueOf(inParam));
                 }
                 settingsSaved = true;
             } else {
@@ -334,8 +333,17 @@ public class NetworkSettingHandler implements RequestHandler {
             }
         }
 
-        if (settingsSaved)
-            _context.router().saveConfig();
+        if (!changes.isEmpty()) {
+            if (!_router.saveConfig(changes, null)) {
+                return new JSONRPC2Response(
+                           new JSONRPC2Error(JSONRPC2Error.INTERNAL_ERROR.getCode(),
+                                             "Failed to save the router configuration"),
+                           req.getID());
+            }
+            _configVersions.changed();
+            if (reinitBandwidth)
+                _router.reinitializeBandwidth();
+        }
 
         outParams.put("SettingsSaved", settingsSaved);
         outParams.put("RestartNeeded", restartNeeded);
@@ -0,0 +1,181 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+import net.i2p.data.router.RouterAddress;
+import net.i2p.router.CommSystemFacade;
+import net.i2p.router.RouterContext;
+import net.i2p.router.networkdb.kademlia.FloodfillNetworkDatabaseFacade;
+import net.i2p.router.transport.TransportUtil;
+import net.i2p.router.transport.ntcp.NTCPTransport;
+import net.i2p.util.SimpleTimer2;
+
+/**
+ * Computes the network status in the background and publishes it
+ * as an immutable snapshot, so that reading it costs a volatile read.
+ *
+ * Every CHECK_INTERVAL the comm system status and hidden mode are looked at,
+ * which is cheap. The full status is recomputed when either changed,
+ * or every REFRESH_INTERVAL for the inputs we can't watch,
+ * e.g. the clock skew and the I2CP state.
+ *
+ * The timer is started by the first read and runs until stop().
+ *
+ * @since 0.12
+ */
+class NetworkStatusEvaluator {
+
+    enum NETWORK_STATUS {
+        OK,
+        TESTING,
+        FIREWALLED,
+        HIDDEN,
+        WARN_FIREWALLED_AND_FAST,
+        WARN_FIREWALLED_AND_FLOODFILL,
+        WARN_FIREWALLED_WITH_INBOUND_TCP,
+        WARN_FIREWALLED_WITH_UDP_DISABLED,
+        ERROR_I2CP,
+        ERROR_CLOCK_SKEW,
+        ERROR_PRIVATE_TCP_ADDRESS,
+        ERROR_SYMMETRIC_NAT,
+        ERROR_UDP_PORT_IN_USE,
+        ERROR_NO_ACTIVE_PEERS_CHECK_CONNECTION_AND_FIREWALL,
+        ERROR_UDP_DISABLED_AND_TCP_UNSET,
+    };
+
+    private static final long CHECK_INTERVAL = 1000;
+    private static final long REFRESH_INTERVAL = 15*1000;
+
+    private final RouterContext _context;
+    private volatile Snapshot _snapshot;
+    // guarded by this
+    private Checker _checker;
+
+    private static class Snapshot {
+        final NETWORK_STATUS status;
+        /** inputs that trigger a recompute when they change */
+        final int commStatus;
+        final boolean hidden;
+        final long computedAt;
+
+        Snapshot(NETWORK_STATUS status, int commStatus, boolean hidden, long computedAt) {
+            this.status = status;
+            this.commStatus = commStatus;
+            this.hidden = hidden;
+            this.computedAt = computedAt;
+        }
+    }
+
+    public NetworkStatusEvaluator(RouterContext ctx) {
+        _context = ctx;
+    }
+
+    /**
+     * @return the status as of at most REFRESH_INTERVAL ago
+     */
+    public NETWORK_STATUS getStatus() {
+        Snapshot s = _snapshot;
+        if (s == null)
+            s = start();
+        return s.status;
+    }
+
+    private synchronized Snapshot start() {
+        if (_snapshot == null)
+            _snapshot = compute();
+        if (_checker == null)
+            _checker = new Checker();
+        return _snapshot;
+    }
+
+    public synchronized void stop() {
+        if (_checker != null) {
+            _checker.cancel();
+            _checker = null;
+        }
+        _snapshot = null;
+    }
+
+    private class Checker extends SimpleTimer2.TimedEvent {
+        public Checker() {
+            super(_context.simpleTimer2(), CHECK_INTERVAL);
+        }
+
+        public void timeReached() {
+            Snapshot s;
+            synchronized (NetworkStatusEvaluator.this) {
+                if (_checker != this)
+                    return;  // stopped
+                s = _snapshot;
+            }
+            try {
+                if (s.commStatus != _context.commSystem().getStatus().getCode() ||
+                    s.hidden != _context.router().isHidden() ||
+                    _context.clock().now() - s.computedAt >= REFRESH_INTERVAL) {
+                    Snapshot n = compute();
+                    synchronized (NetworkStatusEvaluator.this) {
+                        if (_checker != this)
+                            return;  // stopped while computing
+                        _snapshot = n;
+                    }
+                }
+            } finally {
+                // keep checking after an error, e.g. early in router startup
+                synchronized (NetworkStatusEvaluator.this) {
+                    if (_checker == this)
+                        schedule(CHECK_INTERVAL);
+                }
+            }
+        }
+    }
+
+    private Snapshot compute() {
+        int commStatus = _context.commSystem().getStatus().getCode();
+        boolean hidden = _context.router().isHidden();
+        return new Snapshot(getNetworkStatus(commStatus, hidden), commStatus, hidden, _context.clock().now());
+    }
+
+    // Ripped out of SummaryHelper.java
+    private NETWORK_STATUS getNetworkStatus(int status, boolean hidden) {
+        if (_context.router().getUptime() > 60 * 1000
+                && (!_context.router().gracefulShutdownInProgress())
+                && !_context.clientManager().isAlive())
+            return (NETWORK_STATUS.ERROR_I2CP);
+        long skew = _context.commSystem().getFramedAveragePeerClockSkew(33);
+        // Display the actual skew, not the offset
+        if (Math.abs(skew) > 60 * 1000)
+            return NETWORK_STATUS.ERROR_CLOCK_SKEW;
+        if (hidden)
+            return (NETWORK_STATUS.HIDDEN);
+
+        switch (status) {
+        case CommSystemFacade.STATUS_OK:
+            RouterAddress ra = _context.router().getRouterInfo().getTargetAddress("NTCP");
+            if (ra == null || TransportUtil.isPubliclyRoutable(ra.getIP(), true))
+                return NETWORK_STATUS.OK;
+            return NETWORK_STATUS.ERROR_PRIVATE_TCP_ADDRESS;
+        case CommSystemFacade.STATUS_DIFFERENT:
+            return NETWORK_STATUS.ERROR_SYMMETRIC_NAT;
+        case CommSystemFacade.STATUS_REJECT_UNSOLICITED:
+            if (_context.router().getRouterInfo().getTargetAddress("NTCP") != null)
+                return NETWORK_STATUS.WARN_FIREWALLED_WITH_INBOUND_TCP;
+            if (((FloodfillNetworkDatabaseFacade) _context.netDb()).floodfillEnabled())
+                return NETWORK_STATUS.WARN_FIREWALLED_AND_FLOODFILL;
+            if (_context.router().getRouterInfo().getCapabilities().indexOf('O') >= 0)
+                return NETWORK_STATUS.WARN_FIREWALLED_AND_FAST;
+            return NETWORK_STATUS.FIREWALLED;
+        case CommSystemFacade.STATUS_HOSED:
+            return NETWORK_STATUS.ERROR_UDP_PORT_IN_USE;
+        case CommSystemFacade.STATUS_UNKNOWN: // fallthrough
+        default:
+            ra = _context.router().getRouterInfo().getTargetAddress("SSU");
+            if (ra == null && _context.router().getUptime() > 5 * 60 * 1000) {
+                if (_context.commSystem().countActivePeers() <= 0)
+                    return NETWORK_STATUS.ERROR_NO_ACTIVE_PEERS_CHECK_CONNECTION_AND_FIREWALL;
+                else if (_context.getProperty(NTCPTransport.PROP_I2NP_NTCP_HOSTNAME) == null || _context.getProperty(NTCPTransport.PROP_I2NP_NTCP_PORT) == null)
+                    return NETWORK_STATUS.ERROR_UDP_DISABLED_AND_TCP_UNSET;
+                else
+                    return NETWORK_STATUS.WARN_FIREWALLED_WITH_UDP_DISABLED;
+            }
+            return NETWORK_STATUS.TESTING;
+        }
+    }
+}
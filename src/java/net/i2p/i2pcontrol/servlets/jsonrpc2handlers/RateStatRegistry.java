@@ -0,0 +1,254 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+import net.i2p.I2PAppContext;
+import net.i2p.stat.RateStat;
+import net.i2p.stat.StatManager;
+import net.i2p.util.Log;
+import net.i2p.util.SimpleTimer2;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Tracks the RateStats that GetRate created because a client asked for them.
+ *
+ * The router coalesces every RateStat forever, so these are bounded:
+ * at most maxStats in total, at most maxPerToken created by one token,
+ * and each is removed from the StatManager after idleTime without a read.
+ * Stats the router created itself are never touched.
+ * The router may also start using a stat we created first, as
+ * StatManager.createRateStat() keeps an existing one. We never add data,
+ * so once a stat has any, or is no longer in our group, it is the router's:
+ * we stop tracking it and leave it in place.
+ *
+ * The cleaner runs only while there are stats to evict.
+ *
+ * @since 0.12
+ */
+class RateStatRegistry {
+
+    /** periods a created stat may have */
+    private static final int MAX_PERIODS = 8;
+    private static final long CLEAN_INTERVAL = 5*60*1000;
+    private static final String GROUP = "I2PControl";
+
+    private final I2PAppContext _context;
+    private final Log _log;
+    private final int _maxStats;
+    private final int _maxPerToken;
+    private final long _idleTime;
+    // all below guarded by this
+    private final Map<String, Entry> _entries = new HashMap<String, Entry>();
+    private final Map<String, Integer> _perToken = new HashMap<String, Integer>();
+    private Cleaner _cleaner;
+    /** incremented whenever we add or remove a stat */
+    private int _version;
+
+    private static class Entry {
+        final String token;
+        long lastUsed;
+
+        Entry(String token, long now) {
+            this.token = token;
+            lastUsed = now;
+        }
+    }
+
+    /**
+     * A stat or period can't be created
+     */
+    static class LimitException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public LimitException(String msg) {
+            super(msg);
+        }
+    }
+
+    /**
+     * @param idleTime ms
+     */
+    public RateStatRegistry(I2PAppContext ctx, int maxStats, int maxPerToken, long idleTime) {
+        _context = ctx;
+        _log = ctx.logManager().getLog(RateStatRegistry.class);
+        _maxStats = maxStats;
+        _maxPerToken = maxPerToken;
+        _idleTime = idleTime;
+    }
+
+    /**
+     * Get the stat with the period, creating either if within the limits.
+     * A period is only added to a stat we created.
+     *
+     * @param token the requester's auth token, may be null
+     * @return non-null, with a Rate for period
+     * @throws LimitException if it would have to be created and can't
+     */
+    public synchronized RateStat get(String name, long period, String token) throws LimitException {
+        StatManager sm = _context.statManager();
+        RateStat rs = sm.getRate(name);
+        Entry e = _entries.get(name);
+        long now = _context.clock().now();
+        if (rs != null) {
+            if (rs.getRate(period) != null) {
+                if (e != null)
+                    e.lastUsed = now;
+                return rs;
+            }
+            if (e != null && !isOurs(rs)) {
+                // adopted by the router, don't recreate it under it
+                remove(name, e);
+                e = null;
+            }
+            if (e == null)
+                throw new LimitException("Stat " + name + " has no period " + period);
+            long[] old = rs.getPeriods();
+            if (old.length >= MAX_PERIODS)
+                throw new LimitException("Stat " + name + " already has " + MAX_PERIODS + " periods");
+            // RateStat.addRate() is unsupported, recreate it with the new period.
+            // It's ours, so nobody else loses its data.
+            long[] periods = Arrays.copyOf(old, old.length + 1);
+            periods[old.length] = period;
+            sm.removeRateStat(name);
+            sm.createRequiredRateStat(name, GROUP, GROUP, periods);
+            rs = sm.getRate(name);
+            _version++;
+            if (rs == null) {
+                remove(name, e);
+                throw new LimitException("Stat " + name + " unavailable");
+            }
+            e.lastUsed = now;
+            return rs;
+        }
+        if (e != null) {
+            // removed behind our back
+            remove(name, e);
+        }
+        if (_entries.size() >= _maxStats) {
+            evictIdle(now);
+            if (_entries.size() >= _maxStats)
+                throw new LimitException("Too many stats created through I2PControl, limit is " + _maxStats);
+        }
+        String key = token != null ? token : "";
+        Integer count = _perToken.get(key);
+        if (count != null && count.intValue() >= _maxPerToken)
+            throw new LimitException("Too many stats created with this token, limit is " + _maxPerToken);
+        sm.createRequiredRateStat(name, GROUP, GROUP, new long[] { period });
+        rs = sm.getRate(name);
+        if (rs == null)
+            throw new LimitException("Stat " + name + " unavailable");
+        _version++;
+        _entries.put(name, new Entry(key, now));
+        _perToken.put(key, count != null ? count.intValue() + 1 : 1);
+        if (_log.shouldInfo())
+            _log.info("Created stat " + name + " period " + period + ", " + _entries.size() + " total");
+        if (_cleaner == null)
+            _cleaner = new Cleaner();
+        return rs;
+    }
+
+    /**
+     * Note a read of the stat, if we created it.
+     */
+    public synchronized void touch(String name) {
+        Entry e = _entries.get(name);
+        if (e != null)
+            e.lastUsed = _context.clock().now();
+    }
+
+    /**
+     * Stop the cleaner and remove all the stats we created
+     */
+    public synchronized void stop() {
+        if (_cleaner != null) {
+            _cleaner.cancel();
+            _cleaner = null;
+        }
+        StatManager sm = _context.statManager();
+        for (String name : _entries.keySet()) {
+            RateStat rs = sm.getRate(name);
+            if (rs != null && isOurs(rs))
+                sm.removeRateStat(name);
+        }
+        _entries.clear();
+        _perToken.clear();
+        _version++;
+    }
+
+    /**
+     * Changes whenever a stat is created or removed through us
+     */
+    public synchronized int getVersion() {
+        return _version;
+    }
+
+    /** caller must synch */
+    private void evictIdle(long now) {
+        for (Iterator<Map.Entry<String, Entry>> iter = _entries.entrySet().iterator(); iter.hasNext(); ) {
+            Map.Entry<String, Entry> me = iter.next();
+            Entry e = me.getValue();
+            if (now - e.lastUsed < _idleTime)
+                continue;
+            iter.remove();
+            release(me.getKey(), e);
+        }
+    }
+
+    /** caller must synch */
+    private void remove(String name, Entry e) {
+        _entries.remove(name);
+        release(name, e);
+    }
+
+    /**
+     * Created by us, and not since taken over by the router
+     */
+    private static boolean isOurs(RateStat rs) {
+        return GROUP.equals(rs.getGroupName()) && rs.getLifetimeEventCount() == 0;
+    }
+
+    /**
+     * Forget the stat, and remove it from the StatManager unless the router uses it.
+     * caller must synch
+     */
+    private void release(String name, Entry e) {
+        StatManager sm = _context.statManager();
+        RateStat rs = sm.getRate(name);
+        if (rs != null) {
+            if (isOurs(rs)) {
+                sm.removeRateStat(name);
+                if (_log.shouldInfo())
+                    _log.info("Removed stat " + name);
+            } else if (_log.shouldInfo()) {
+                _log.info("Stat " + name + " is used by the router, leaving it");
+            }
+        }
+        _version++;
+        Integer count = _perToken.get(e.token);
+        if (count == null || count.intValue() <= 1)
+            _perToken.remove(e.token);
+        else
+            _perToken.put(e.token, count.intValue() - 1);
+    }
+
+    private class Cleaner extends SimpleTimer2.TimedEvent {
+        public Cleaner() {
+            super(_context.simpleTimer2(), CLEAN_INTERVAL);
+        }
+
+        public void timeReached() {
+            synchronized (RateStatRegistry.this) {
+                if (_cleaner != this)
+                    return;  // stopped
+                evictIdle(_context.clock().now());
+                if (_entries.isEmpty()) {
+                    _cleaner = null;
+                    return;
+                }
+            }
+            schedule(CLEAN_INTERVAL);
+        }
+    }
+}
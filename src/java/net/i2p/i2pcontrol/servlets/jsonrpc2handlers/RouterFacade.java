@@ -0,0 +1,154 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+import net.i2p.I2PAppContext;
+import net.i2p.data.Hash;
+import net.i2p.data.router.RouterInfo;
+import net.i2p.update.UpdateManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the handlers need from the router.
+ *
+ * LiveRouterFacade is backed by the RouterContext we run in.
+ * SimulatedRouterFacade makes the data up, so the server can run
+ * and be load tested without a router, see i2pcontrol.router.simulated.
+ *
+ * @since 0.12
+ */
+public interface RouterFacade {
+
+    /**
+     * For the clock, timers, logs and stats, not for router data
+     */
+    public I2PAppContext getContext();
+
+    /**
+     * Stop any timers
+     */
+    public void stop();
+
+    ////// RouterInfo
+
+    public String getVersion();
+
+    public long getUptime();
+
+    public String getTunnelStatus();
+
+    /**
+     * @return the ordinal of a NetworkStatusEvaluator.NETWORK_STATUS
+     */
+    public int getNetworkStatus();
+
+    public double getReceiveBps();
+
+    public double getSendBps();
+
+    public double getReceiveBps15s();
+
+    public double getSendBps15s();
+
+    public int getParticipatingTunnelCount();
+
+    public int getExploratoryInboundTunnelCount();
+
+    public int getExploratoryOutboundTunnelCount();
+
+    public int getClientInboundTunnelCount();
+
+    public int getClientOutboundTunnelCount();
+
+    public int getKnownRouterCount();
+
+    public int getActivePeerCount();
+
+    public int getFastPeerCount();
+
+    public int getHighCapacityPeerCount();
+
+    public int getJobQueueReadyCount();
+
+    public long getJobQueueMaxLag();
+
+    ////// NetDb
+
+    /**
+     * Our own
+     */
+    public RouterInfo getRouterInfo();
+
+    public Set<Hash> getAllRouters();
+
+    /**
+     * @return null if not found
+     */
+    public RouterInfo lookupRouterInfoLocally(Hash key);
+
+    ////// Config
+
+    /**
+     * The router config, then the system properties
+     */
+    public String getProperty(String name);
+
+    public String getProperty(String name, String defaultValue);
+
+    public int getProperty(String name, int defaultValue);
+
+    /**
+     * The router config only
+     */
+    public String getConfigSetting(String name);
+
+    /**
+     * @return unmodifiable
+     */
+    public Map<String, String> getConfigMap();
+
+    public Set<String> getConfigSettings();
+
+    /**
+     * @param toRemove may be null
+     * @return success
+     */
+    public boolean saveConfig(Map<String, String> toAdd, Collection<String> toRemove);
+
+    /**
+     * @return null if the config is not kept in a file
+     */
+    public String getConfigFilename();
+
+    /**
+     * Apply changed bandwidth limits
+     */
+    public void reinitializeBandwidth();
+
+    ////// RouterManager
+
+    /**
+     * @param exitCode one of the Router.EXIT_* codes, graceful or not
+     */
+    public void shutdown(int exitCode);
+
+    /**
+     * @return true if a reseed was started
+     */
+    public boolean requestReseed();
+
+    public boolean isReseedInProgress();
+
+    public String getReseedStatus();
+
+    /**
+     * @return the error of the last reseed, empty if none
+     */
+    public String getReseedError();
+
+    /**
+     * @return null if not available
+     */
+    public UpdateManager getUpdateManager();
+}
@@ -6,17 +6,9 @@ import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
 import com.thetransactioncompany.jsonrpc2.server.MessageContext;
 import com.thetransactioncompany.jsonrpc2.server.RequestHandler;
 
-import net.i2p.I2PAppContext;
-import net.i2p.data.router.RouterAddress;
-import net.i2p.router.CommSystemFacade;
-import net.i2p.router.Router;
-import net.i2p.router.RouterContext;
-import net.i2p.router.RouterVersion;
-import net.i2p.router.networkdb.kademlia.FloodfillNetworkDatabaseFacade;
-import net.i2p.router.transport.TransportUtil;
-import net.i2p.router.transport.ntcp.NTCPTransport;
-
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 /*
@@ -38,23 +30,41 @@ import java.util.Map;
 
 public class RouterInfoHandler implements RequestHandler {
     private final JSONRPC2Helper _helper;
-    private final RouterContext _context;
+    private final RouterFacade _router;
+    private final RouterInfoRegistry _registry;
+    private final RouterInfoHistory _history;
+    private static final String[] historyArgs = {"Keys"};
+    /** default range of RouterInfoHistory */
+    private static final long DEFAULT_HISTORY_RANGE = 60*60*1000L;
 
-    public RouterInfoHandler(RouterContext ctx, JSONRPC2Helper helper) {
+    public RouterInfoHandler(RouterFacade router, JSONRPC2Helper helper) {
         _helper = helper;
-        _context = ctx;
+        _router = router;
+        _registry = createRegistry();
+        _history = router != null ? new RouterInfoHistory(router, _registry) : null;
+    }
+
+    /**
+     *  Stop the history timer
+     *  @since 0.12
+     */
+    public void stopTimedEvents() {
+        if (_history != null)
+            _history.stop();
     }
 
 
     // Reports the method names of the handled requests
     public String[] handledRequests() {
-        return new String[] { "RouterInfo" };
+        return new String[] { "RouterInfo", "RouterInfoHistory" };
     }
 
     // Processes the requests
     public JSONRPC2Response process(JSONRPC2Request req, MessageContext ctx) {
         if (req.getMethod().equals("RouterInfo")) {
             return process(req);
+        } else if (req.getMethod().equals("RouterInfoHistory")) {
+            return processHistory(req);
         } else {
             // Method name not supported
             return new JSONRPC2Response(JSONRPC2Error.METHOD_NOT_FOUND,
@@ -62,152 +72,213 @@ public class RouterInfoHandler implements RequestHandler {
         }
     }
 
-    @SuppressWarnings("unchecked")
     private JSONRPC2Response process(JSONRPC2Request req) {
         JSONRPC2Error err = _helper.validateParams(null, req);
         if (err != null)
             return new JSONRPC2Response(err, req.getID());
 
-        if (_context == null) {
+        if (_router == null) {
             return new JSONRPC2Response(new JSONRPC2Error(
                                             JSONRPC2Error.INTERNAL_ERROR.getCode(),
                                             "RouterContext was not initialized. Query failed"),
                                         req.getID());
         }
         Map<String, Object> inParams = req.getNamedParams();
-        Map outParams = new HashMap();
-
-        if (inParams.containsKey("i2p.router.version")) {
-            try {
-                Class rvClass = Class.forName("net.i2p.router.RouterVersion");
-                java.lang.reflect.Field field = rvClass.getDeclaredField("FULL_VERSION");
-                String fullVersion = (String) field.get(new RouterVersion());
-                outParams.put("i2p.router.version", fullVersion);
-            } catch (Exception e) {} // Ignore
-        }
+        Map<String, Object> outParams = _registry.query(_router, inParams.keySet());
+        return new JSONRPC2Response(outParams, req.getID());
+    }
+
+    /**
+     *  Params:
+     *    Keys: list of numeric RouterInfo keys, wildcards and "all" as in RouterInfo
+     *    From, To: optional, ms since epoch, default the last hour
+     *    Resolution: optional, 1000 or 60000 ms, default the finest one going back to From
+     *
+     *  @since 0.12
+     */
+    private JSONRPC2Response processHistory(JSONRPC2Request req) {
+        JSONRPC2Error err = _helper.validateParams(historyArgs, req);
+        if (err != null)
+            return new JSONRPC2Response(err, req.getID());
 
-        if (inParams.containsKey("i2p.router.uptime")) {
-            Router router = _context.router();
-            if (router == null) {
-                outParams.put("i2p.router.uptime", 0);
+        if (_router == null) {
+            return new JSONRPC2Response(new JSONRPC2Error(
+                                            JSONRPC2Error.INTERNAL_ERROR.getCode(),
+                                            "RouterContext was not initialized. Query failed"),
+                                        req.getID());
+        }
+        Map<String, Object> inParams = req.getNamedParams();
+        Object keys = inParams.get("Keys");
+        if (!(keys instanceof List))
+            return new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.INVALID_PARAMS.getCode(),
+                                        "\"Keys\" must be a list of RouterInfo keys"), req.getID());
+        List<String> requested = new ArrayList<String>();
+        for (Object o : (List) keys) {
+            if (!(o instanceof String))
+                return new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.INVALID_PARAMS.getCode(),
+                                            "\"Keys\" must be a list of RouterInfo keys"), req.getID());
+            requested.add((String) o);
+        }
+        long to, from;
+        int tier;
+        try {
+            to = getLong(inParams, "To", _router.getContext().clock().now());
+            from = getLong(inParams, "From", to - DEFAULT_HISTORY_RANGE);
+            long res = getLong(inParams, "Resolution", -1);
+            if (res < 0) {
+                tier = _history.getTier(from);
             } else {
-                outParams.put("i2p.router.uptime", router.getUptime());
+                tier = -1;
+                for (int i = 0; i < RouterInfoHistory.RESOLUTIONS.length; i++) {
+                    if (RouterInfoHistory.RESOLUTIONS[i] == res)
+                        tier = i;
+                }
+                if (tier < 0)
+                    return new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.INVALID_PARAMS.getCode(),
+                                                "\"Resolution\" must be one of " + Arrays.toString(RouterInfoHistory.RESOLUTIONS)),
+                                                req.getID());
             }
+        } catch (ClassCastException e) {
+            return new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.INVALID_PARAMS.getCode(),
+                                        "\"From\", \"To\" and \"Resolution\" must be numbers"), req.getID());
         }
+        return new JSONRPC2Response(_history.get(requested, tier, from, to), req.getID());
+    }
 
-        if (inParams.containsKey("i2p.router.status")) {
-            outParams.put("i2p.router.status", _context.throttle().getTunnelStatus());
-        }
+    private static long getLong(Map<String, Object> params, String key, long dflt) {
+        Object o = params.get(key);
+        if (o == null)
+            return dflt;
+        return ((Number) o).longValue();
+    }
 
-        if (inParams.containsKey("i2p.router.net.status")) {
-            outParams.put("i2p.router.net.status", getNetworkStatus().ordinal());
-        }
+    /**
+     *  All the keys we answer.
+     *  Add new ones here, a request only pays for the keys it asks for.
+     */
+    private RouterInfoRegistry createRegistry() {
+        RouterInfoRegistry rv = new RouterInfoRegistry();
 
-        if (inParams.containsKey("i2p.router.net.bw.inbound.1s")) {
-            outParams.put("i2p.router.net.bw.inbound.1s", _context.bandwidthLimiter().getReceiveBps());
-        }
+        rv.register("i2p.router.version", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.Supplier() {
+            public Object get(RouterFacade router) {
+                return router.getVersion();
+            }
+        });
 
-        if (inParams.containsKey("i2p.router.net.bw.outbound.1s")) {
-            outParams.put("i2p.router.net.bw.outbound.1s", _context.bandwidthLimiter().getSendBps());
-        }
+        rv.register("i2p.router.uptime", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getUptime();
+            }
+        });
 
-        if (inParams.containsKey("i2p.router.net.bw.inbound.15s")) {
-            outParams.put("i2p.router.net.bw.inbound.15s", _context.bandwidthLimiter().getReceiveBps15s());
-        }
+        rv.register("i2p.router.status", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.Supplier() {
+            public Object get(RouterFacade router) {
+                return router.getTunnelStatus();
+            }
+        });
 
-        if (inParams.containsKey("i2p.router.net.bw.outbound.15s")) {
-            outParams.put("i2p.router.net.bw.outbound.15s", _context.bandwidthLimiter().getSendBps15s());
-        }
+        rv.register("i2p.router.net.status", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getNetworkStatus();
+            }
+        });
 
-        if (inParams.containsKey("i2p.router.net.tunnels.participating")) {
-            outParams.put("i2p.router.net.tunnels.participating", _context.tunnelManager().getParticipatingCount());
-        }
+        rv.register("i2p.router.net.bw.inbound.1s", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier(false) {
+            public double getValue(RouterFacade router) {
+                return router.getReceiveBps();
+            }
+        });
 
-        if (inParams.containsKey("i2p.router.netdb.knownpeers")) {
-            // Why max(-1, 0) is used I don't know, it is the implementation used in the router console.
-            outParams.put("i2p.router.netdb.knownpeers", Math.max(_context.netDb().getKnownRouters() - 1, 0));
-        }
+        rv.register("i2p.router.net.bw.outbound.1s", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier(false) {
+            public double getValue(RouterFacade router) {
+                return router.getSendBps();
+            }
+        });
 
-        if (inParams.containsKey("i2p.router.netdb.activepeers")) {
-            outParams.put("i2p.router.netdb.activepeers", _context.commSystem().countActivePeers());
-        }
+        rv.register("i2p.router.net.bw.inbound.15s", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier(false) {
+            public double getValue(RouterFacade router) {
+                return router.getReceiveBps15s();
+            }
+        });
 
-        if (inParams.containsKey("i2p.router.netdb.fastpeers")) {
-            outParams.put("i2p.router.netdb.fastpeers", _context.profileOrganizer().countFastPeers());
-        }
+        rv.register("i2p.router.net.bw.outbound.15s", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier(false) {
+            public double getValue(RouterFacade router) {
+                return router.getSendBps15s();
+            }
+        });
 
-        if (inParams.containsKey("i2p.router.netdb.highcapacitypeers")) {
-            outParams.put("i2p.router.netdb.highcapacitypeers", _context.profileOrganizer().countHighCapacityPeers());
-        }
+        rv.register("i2p.router.net.tunnels.participating", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getParticipatingTunnelCount();
+            }
+        });
 
-        if (inParams.containsKey("i2p.router.netdb.isreseeding")) {
-            outParams.put("i2p.router.netdb.isreseeding", Boolean.valueOf(System.getProperty("net.i2p.router.web.ReseedHandler.reseedInProgress")).booleanValue());
-        }
-        return new JSONRPC2Response(outParams, req.getID());
-    }
+        rv.register("i2p.router.net.tunnels.exploratory.inbound", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getExploratoryInboundTunnelCount();
+            }
+        });
 
-    private static enum NETWORK_STATUS {
-        OK,
-        TESTING,
-        FIREWALLED,
-        HIDDEN,
-        WARN_FIREWALLED_AND_FAST,
-        WARN_FIREWALLED_AND_FLOODFILL,
-        WARN_FIREWALLED_WITH_INBOUND_TCP,
-        WARN_FIREWALLED_WITH_UDP_DISABLED,
-        ERROR_I2CP,
-        ERROR_CLOCK_SKEW,
-        ERROR_PRIVATE_TCP_ADDRESS,
-        ERROR_SYMMETRIC_NAT,
-        ERROR_UDP_PORT_IN_USE,
-        ERROR_NO_ACTIVE_PEERS_CHECK_CONNECTION_AND_FIREWALL,
-        ERROR_UDP_DISABLED_AND_TCP_UNSET,
-    };
-
-    // Ripped out of SummaryHelper.java
-    private NETWORK_STATUS getNetworkStatus() {
-        if (_context.router().getUptime() > 60 * 1000
-                && (!_context.router().gracefulShutdownInProgress())
-                && !_context.clientManager().isAlive())
-            return (NETWORK_STATUS.ERROR_I2CP);
-        long skew = _context.commSystem().getFramedAveragePeerClockSkew(33);
-        // Display the actual skew, not the offset
-        if (Math.abs(skew) > 60 * 1000)
-            return NETWORK_STATUS.ERROR_CLOCK_SKEW;
-        if (_context.router().isHidden())
-            return (NETWORK_STATUS.HIDDEN);
-
-        int status = _context.commSystem().getStatus().getCode();
-        switch (status) {
-        case CommSystemFacade.STATUS_OK:
-            RouterAddress ra = _context.router().getRouterInfo().getTargetAddress("NTCP");
-            if (ra == null || TransportUtil.isPubliclyRoutable(ra.getIP(), true))
-                return NETWORK_STATUS.OK;
-            return NETWORK_STATUS.ERROR_PRIVATE_TCP_ADDRESS;
-        case CommSystemFacade.STATUS_DIFFERENT:
-            return NETWORK_STATUS.ERROR_SYMMETRIC_NAT;
-        case CommSystemFacade.STATUS_REJECT_UNSOLICITED:
-            if (_context.router().getRouterInfo().getTargetAddress("NTCP") != null)
-                return NETWORK_STATUS.WARN_FIREWALLED_WITH_INBOUND_TCP;
-            if (((FloodfillNetworkDatabaseFacade) _context.netDb()).floodfillEnabled())
-                return NETWORK_STATUS.WARN_FIREWALLED_AND_FLOODFILL;
-            if (_context.router().getRouterInfo().getCapabilities().indexOf('O') >= 0)
-                return NETWORK_STATUS.WARN_FIREWALLED_AND_FAST;
-            return NETWORK_STATUS.FIREWALLED;
-        case CommSystemFacade.STATUS_HOSED:
-            return NETWORK_STATUS.ERROR_UDP_PORT_IN_USE;
-        case CommSystemFacade.STATUS_UNKNOWN: // fallthrough
-        default:
-            ra = _context.router().getRouterInfo().getTargetAddress("SSU");
-            if (ra == null && _context.router().getUptime() > 5 * 60 * 1000) {
-                if (_context.commSystem().countActivePeers() <= 0)
-                    return NETWORK_STATUS.ERROR_NO_ACTIVE_PEERS_CHECK_CONNECTION_AND_FIREWALL;
-                else if (_context.getProperty(NTCPTransport.PROP_I2NP_NTCP_HOSTNAME) == null || _context.getProperty(NTCPTransport.PROP_I2NP_NTCP_PORT) == null)
-                    return NETWORK_STATUS.ERROR_UDP_DISABLED_AND_TCP_UNSET;
-                else
-                    return NETWORK_STATUS.WARN_FIREWALLED_WITH_UDP_DISABLED;
-            }
-            return NETWORK_STATUS.TESTING;
-        }
+        rv.register("i2p.router.net.tunnels.exploratory.outbound", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getExploratoryOutboundTunnelCount();
+            }
+        });
+
+        rv.register("i2p.router.net.tunnels.client.inbound", RouterInfoRegistry.Cost.MODERATE, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getClientInboundTunnelCount();
+            }
+        });
+
+        rv.register("i2p.router.net.tunnels.client.outbound", RouterInfoRegistry.Cost.MODERATE, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getClientOutboundTunnelCount();
+            }
+        });
+
+        rv.register("i2p.router.netdb.knownpeers", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                // Why max(-1, 0) is used I don't know, it is the implementation used in the router console.
+                return Math.max(router.getKnownRouterCount() - 1, 0);
+            }
+        });
+
+        rv.register("i2p.router.netdb.activepeers", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getActivePeerCount();
+            }
+        });
+
+        rv.register("i2p.router.netdb.fastpeers", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getFastPeerCount();
+            }
+        });
+
+        rv.register("i2p.router.netdb.highcapacitypeers", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getHighCapacityPeerCount();
+            }
+        });
+
+        rv.register("i2p.router.netdb.isreseeding", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.Supplier() {
+            public Object get(RouterFacade router) {
+                return Boolean.valueOf(router.isReseedInProgress());
+            }
+        });
+
+        rv.register("i2p.router.jobqueue.ready", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getJobQueueReadyCount();
+            }
+        });
+
+        rv.register("i2p.router.jobqueue.maxlag", RouterInfoRegistry.Cost.CHEAP, new RouterInfoRegistry.NumericSupplier() {
+            public double getValue(RouterFacade router) {
+                return router.getJobQueueMaxLag();
+            }
+        });
+        return rv;
     }
 }
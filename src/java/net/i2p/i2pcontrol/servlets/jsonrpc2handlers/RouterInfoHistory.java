@@ -0,0 +1,321 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.Log;
+import net.i2p.util.SimpleTimer2;
+import net.minidev.json.JSONStreamAwareEx;
+import net.minidev.json.JSONStyle;
+import net.minidev.json.JSONValue;
+import net.minidev.json.reader.NumberWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the numeric RouterInfo keys in memory, so that a client
+ * can get a graph's worth of values in one request.
+ *
+ * Two tiers: one sample per second for the last hour, and
+ * the average of each minute for the last day.
+ * Samples are kept in preallocated float ring buffers,
+ * sampling boxes nothing and allocates nothing.
+ * A query copies the requested slices out under the lock,
+ * and they are written as the response is, without boxing.
+ * A missed sample is stored as NaN and returned as null,
+ * except that a single skipped second gets the next sample.
+ *
+ * The sampler is started at construction and runs until stop().
+ *
+ * @since 0.12
+ */
+class RouterInfoHistory {
+
+    /** ms */
+    public static final long[] RESOLUTIONS = { 1000, 60*1000 };
+    private static final int[] CAPACITIES = { 60*60, 24*60 };
+
+    private final RouterFacade _router;
+    private final I2PAppContext _context;
+    private final Log _log;
+    private final String[] _keys;
+    private final RouterInfoRegistry.NumericSupplier[] _suppliers;
+    private final Tier[] _tiers;
+    // all below guarded by this
+    /** the sample being taken */
+    private final float[] _current;
+    /** running sums for the minute tier */
+    private final double[] _sums;
+    private final float[] _averages;
+    private final int[] _counts;
+    private long _sumSlot = -1;
+    private Sampler _sampler;
+
+    /**
+     * One ring per key, all rings of a tier advance together.
+     */
+    private static class Tier {
+        final long resolution;
+        final int capacity;
+        final float[][] values;
+        /** absolute slot (time / resolution) of the newest sample, -1 if none */
+        long last = -1;
+        /** absolute slot of the first sample ever recorded, -1 if none */
+        long start = -1;
+
+        Tier(long resolution, int capacity, int keys) {
+            this.resolution = resolution;
+            this.capacity = capacity;
+            values = new float[keys][capacity];
+        }
+
+        /** @return oldest slot still held, -1 if none */
+        long first() {
+            return last < 0 ? -1 : Math.max(start, last - capacity + 1);
+        }
+
+        void record(long slot, float[] sample) {
+            if (slot < last)
+                return;  // clock went back
+            if (last < 0) {
+                start = slot;
+            } else {
+                // NaN out the slots we missed, at most a full turn
+                for (long s = Math.max(last + 1, slot - capacity + 1); s < slot; s++) {
+                    int i = (int) (s % capacity);
+                    for (int k = 0; k < values.length; k++) {
+                        values[k][i] = Float.NaN;
+                    }
+                }
+            }
+            int i = (int) (slot % capacity);
+            for (int k = 0; k < values.length; k++) {
+                values[k][i] = sample[k];
+            }
+            last = slot;
+        }
+    }
+
+    public RouterInfoHistory(RouterFacade router, RouterInfoRegistry registry) {
+        _router = router;
+        _context = router.getContext();
+        _log = _context.logManager().getLog(RouterInfoHistory.class);
+        Map<String, RouterInfoRegistry.NumericSupplier> numeric = registry.getNumeric();
+        int sz = numeric.size();
+        _keys = numeric.keySet().toArray(new String[sz]);
+        _suppliers = numeric.values().toArray(new RouterInfoRegistry.NumericSupplier[sz]);
+        _tiers = new Tier[RESOLUTIONS.length];
+        for (int i = 0; i < RESOLUTIONS.length; i++) {
+            _tiers[i] = new Tier(RESOLUTIONS[i], CAPACITIES[i], sz);
+        }
+        _current = new float[sz];
+        _sums = new double[sz];
+        _averages = new float[sz];
+        _counts = new int[sz];
+        _sampler = new Sampler();
+    }
+
+    public synchronized void stop() {
+        if (_sampler != null) {
+            _sampler.cancel();
+            _sampler = null;
+        }
+    }
+
+    /**
+     * Runs in the middle of each slot of the first tier. Scheduling
+     * RESOLUTIONS[0] after each run would let the timer's lateness add up
+     * until a slot is skipped.
+     */
+    private class Sampler extends SimpleTimer2.TimedEvent {
+        public Sampler() {
+            super(_context.simpleTimer2(), nextDelay(_context.clock().now()));
+        }
+
+        public void timeReached() {
+            long now = _context.clock().now();
+            synchronized (RouterInfoHistory.this) {
+                if (_sampler != this)
+                    return;  // stopped
+                sample(now);
+            }
+            schedule(nextDelay(now));
+        }
+    }
+
+    /**
+     * @return ms to the middle of the slot after the one now is in
+     */
+    private static long nextDelay(long now) {
+        long res = RESOLUTIONS[0];
+        return (now / res + 1) * res + res / 2 - now;
+    }
+
+    /** caller must synch */
+    private void sample(long now) {
+        for (int k = 0; k < _suppliers.length; k++) {
+            double v;
+            try {
+                v = _suppliers[k].getValue(_router);
+            } catch (RuntimeException re) {
+                // e.g. a subsystem not yet started
+                if (_log.shouldDebug())
+                    _log.debug("Sampling " + _keys[k] + " failed", re);
+                v = Double.NaN;
+            }
+            _current[k] = (float) v;
+        }
+        long slot = now / RESOLUTIONS[0];
+        Tier t = _tiers[0];
+        // a late run skipped one slot, don't leave a hole for it
+        if (t.last >= 0 && slot == t.last + 2)
+            t.record(slot - 1, _current);
+        t.record(slot, _current);
+
+        long minute = now / RESOLUTIONS[1];
+        if (minute != _sumSlot) {
+            if (_sumSlot >= 0) {
+                for (int k = 0; k < _sums.length; k++) {
+                    _averages[k] = _counts[k] > 0 ? (float) (_sums[k] / _counts[k]) : Float.NaN;
+                    _sums[k] = 0;
+                    _counts[k] = 0;
+                }
+                _tiers[1].record(_sumSlot, _averages);
+            }
+            _sumSlot = minute;
+        }
+        for (int k = 0; k < _current.length; k++) {
+            float v = _current[k];
+            if (!Float.isNaN(v)) {
+                _sums[k] += v;
+                _counts[k]++;
+            }
+        }
+    }
+
+    /**
+     * Pick the finest resolution still holding from
+     *
+     * @return index into RESOLUTIONS
+     */
+    public synchronized int getTier(long from) {
+        for (int i = 0; i < _tiers.length; i++) {
+            Tier t = _tiers[i];
+            if (t.last >= 0 && t.first() * t.resolution <= from)
+                return i;
+        }
+        // nothing goes back that far, return the longest
+        return _tiers.length - 1;
+    }
+
+    /**
+     * The recorded values between from and to, inclusive.
+     * Values are floats, null where a sample is missing.
+     *
+     * @param requested keys, with the RouterInfoRegistry wildcard rules
+     * @param tier index into RESOLUTIONS
+     * @return "Resolution", "From" and "To" of the returned slots, in ms,
+     *         and "Values", key to list of values.
+     *         From and To are absent if nothing is recorded in the range.
+     */
+    public Map<String, Object> get(Collection<String> requested, int tier, long from, long to) {
+        Map<String, Object> rv = new HashMap<String, Object>(8);
+        List<String> keys = new ArrayList<String>();
+        List<float[]> slices = new ArrayList<float[]>();
+        synchronized (this) {
+            Tier t = _tiers[tier];
+            rv.put("Resolution", t.resolution);
+            long start = Math.max(from / t.resolution, t.first());
+            long end = Math.min(to / t.resolution, t.last);
+            if (t.last >= 0 && start <= end) {
+                rv.put("From", start * t.resolution);
+                rv.put("To", end * t.resolution);
+                int n = (int) (end - start + 1);
+                int first = (int) (start % t.capacity);
+                // at most two runs, before and after the wrap
+                int run = Math.min(n, t.capacity - first);
+                for (int k = 0; k < _keys.length; k++) {
+                    if (!RouterInfoRegistry.matches(_keys[k], requested))
+                        continue;
+                    float[] slice = new float[n];
+                    System.arraycopy(t.values[k], first, slice, 0, run);
+                    System.arraycopy(t.values[k], 0, slice, run, n - run);
+                    keys.add(_keys[k]);
+                    slices.add(slice);
+                }
+            }
+        }
+        rv.put("Values", new Values(keys, slices));
+        return rv;
+    }
+
+    /**
+     * Key to list of values, written from the copied slices
+     */
+    private static class Values implements JSONStreamAwareEx {
+        private final List<String> _keys;
+        private final List<float[]> _slices;
+
+        public Values(List<String> keys, List<float[]> slices) {
+            _keys = keys;
+            _slices = slices;
+        }
+
+        public void writeJSONString(Appendable out) throws IOException {
+            writeJSONString(out, JSONValue.COMPRESSION);
+        }
+
+        public void writeJSONString(Appendable out, JSONStyle compression) throws IOException {
+            compression.objectStart(out);
+            for (int k = 0; k < _keys.size(); k++) {
+                if (k == 0)
+                    compression.objectFirstStart(out);
+                else
+                    compression.objectNext(out);
+                String key = _keys.get(k);
+                if (compression.mustProtectKey(key)) {
+                    out.append('"');
+                    JSONValue.escape(key, out, compression);
+                    out.append('"');
+                } else {
+                    out.append(key);
+                }
+                compression.objectEndOfKey(out);
+                writeArray(_slices.get(k), out, compression);
+                compression.objectElmStop(out);
+            }
+            compression.objectStop(out);
+        }
+
+        private static void writeArray(float[] slice, Appendable out, JSONStyle compression) throws IOException {
+            compression.arrayStart(out);
+            for (int i = 0; i < slice.length; i++) {
+                if (i == 0)
+                    compression.arrayfirstObject(out);
+                else
+                    compression.arrayNextElm(out);
+                writeFloat(slice[i], out);
+                compression.arrayObjectEnd(out);
+            }
+            compression.arrayStop(out);
+        }
+
+        /**
+         * As Float.toString(), which the boxed values went through,
+         * without the String for the common integral case
+         */
+        private static void writeFloat(float v, Appendable out) throws IOException {
+            if (Float.isNaN(v)) {
+                out.append("null");
+            } else if (v == (long) v && Math.abs(v) < 1.0e7f && !(v == 0 && Float.floatToRawIntBits(v) != 0)) {
+                NumberWriter.writeLong((long) v, out);
+                out.append(".0");
+            } else {
+                out.append(Float.toString(v));
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Maps each RouterInfo key to the supplier of its value.
+ *
+ * A request names the keys it wants. Besides exact keys, it may ask for
+ * every key under a prefix, as "i2p.router.netdb.*", or for every key
+ * with "all". Wildcards and "all" skip EXPENSIVE keys, those must be
+ * asked for by name.
+ *
+ * Register all keys before the first query, lookups are not synchronized.
+ *
+ * @since 0.12
+ */
+class RouterInfoRegistry {
+
+    public static final String ALL = "all";
+    public static final String WILDCARD = "*";
+
+    public enum Cost {
+        /** a field read or a counter */
+        CHEAP,
+        /** a few lookups or a small computation */
+        MODERATE,
+        /** walks a large structure, only returned when asked for by name */
+        EXPENSIVE
+    }
+
+    public interface Supplier {
+        /** @return the value, or null to leave the key out of the result */
+        public Object get(RouterFacade router);
+    }
+
+    /**
+     * A number, that RouterInfoHistory records.
+     * RouterInfo returns it as a Long, or as a Float for the keys that were
+     * always floats, so a key keeps its JSON type whatever the value.
+     */
+    public static abstract class NumericSupplier implements Supplier {
+        private final boolean _integral;
+
+        /** an integral key */
+        public NumericSupplier() {
+            this(true);
+        }
+
+        /** @param integral false for a Float key */
+        public NumericSupplier(boolean integral) {
+            _integral = integral;
+        }
+
+        /** @return the value, NaN if not available */
+        public abstract double getValue(RouterFacade router);
+
+        public Object get(RouterFacade router) {
+            double v = getValue(router);
+            if (Double.isNaN(v))
+                return null;
+            if (_integral)
+                return Long.valueOf((long) v);
+            return Float.valueOf((float) v);
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        final Cost cost;
+        final Supplier supplier;
+
+        Entry(String key, Cost cost, Supplier supplier) {
+            this.key = key;
+            this.cost = cost;
+            this.supplier = supplier;
+        }
+    }
+
+    /** in a query result while building it, for a supplier that returned null */
+    private static final Object MISSING = new Object();
+
+    private final TreeMap<String, Entry> _entries = new TreeMap<String, Entry>();
+
+    public void register(String key, Cost cost, Supplier supplier) {
+        if (key.equals(ALL) || key.endsWith(WILDCARD))
+            throw new IllegalArgumentException("Reserved key " + key);
+        if (_entries.put(key, new Entry(key, cost, supplier)) != null)
+            throw new IllegalArgumentException("Duplicate key " + key);
+    }
+
+    public boolean isRegistered(String key) {
+        return _entries.containsKey(key);
+    }
+
+    /**
+     * The numeric keys that are not EXPENSIVE, in key order
+     */
+    public Map<String, NumericSupplier> getNumeric() {
+        Map<String, NumericSupplier> rv = new LinkedHashMap<String, NumericSupplier>();
+        for (Entry e : _entries.values()) {
+            if (e.cost != Cost.EXPENSIVE && e.supplier instanceof NumericSupplier)
+                rv.put(e.key, (NumericSupplier) e.supplier);
+        }
+        return rv;
+    }
+
+    /**
+     * Does key match the requested keys, with the same rules as query()
+     */
+    public static boolean matches(String key, Collection<String> requested) {
+        for (String r : requested) {
+            if (r.equals(ALL) || r.equals(key))
+                return true;
+            if (r.endsWith(WILDCARD) && key.startsWith(r.substring(0, r.length() - 1)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Evaluate the requested keys. Unknown keys are ignored.
+     *
+     * @param requested exact keys, prefixes ending in ".*", or "all"
+     * @return key to value, each supplier called at most once
+     */
+    public Map<String, Object> query(RouterFacade router, Collection<String> requested) {
+        Map<String, Object> rv = new HashMap<String, Object>(Math.max(16, requested.size() * 2));
+        boolean all = false;
+        boolean missing = false;
+        for (String key : requested) {
+            if (key.equals(ALL)) {
+                if (!all) {
+                    missing |= addAll(router, _entries, rv);
+                    all = true;
+                }
+            } else if (key.endsWith(WILDCARD)) {
+                // after "all", wildcards add nothing, EXPENSIVE keys still must be named
+                if (!all) {
+                    String prefix = key.substring(0, key.length() - 1);
+                    missing |= addAll(router, _entries.subMap(prefix, prefix + Character.MAX_VALUE), rv);
+                }
+            } else if (!rv.containsKey(key)) {
+                Entry e = _entries.get(key);
+                if (e != null)
+                    missing |= add(router, e, rv);
+            }
+        }
+        if (missing)
+            rv.values().removeAll(Collections.singleton(MISSING));
+        return rv;
+    }
+
+    /** @return true if a MISSING was added */
+    private static boolean addAll(RouterFacade router, SortedMap<String, Entry> entries, Map<String, Object> rv) {
+        boolean rvMissing = false;
+        for (Entry e : entries.values()) {
+            if (e.cost != Cost.EXPENSIVE && !rv.containsKey(e.key))
+                rvMissing |= add(router, e, rv);
+        }
+        return rvMissing;
+    }
+
+    /**
+     * A null value is remembered as MISSING, so the supplier isn't called again
+     *
+     * @return true if a MISSING was added
+     */
+    private static boolean add(RouterFacade router, Entry e, Map<String, Object> rv) {
+        Object val = e.supplier.get(router);
+        rv.put(e.key, val != null ? val : MISSING);
+        return val == null;
+    }
+}
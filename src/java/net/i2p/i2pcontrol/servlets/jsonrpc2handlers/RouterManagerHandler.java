@@ -6,19 +6,15 @@ import com.thetransactioncompany.jsonrpc2.JSONRPC2Response;
 import com.thetransactioncompany.jsonrpc2.server.MessageContext;
 import com.thetransactioncompany.jsonrpc2.server.RequestHandler;
 
-import net.i2p.I2PAppContext;
-import net.i2p.app.ClientAppManager;
 import net.i2p.router.Router;
-import net.i2p.router.RouterContext;
-import net.i2p.router.networkdb.reseed.ReseedChecker;
 import net.i2p.update.UpdateManager;
 import net.i2p.update.UpdateType;
-import net.i2p.util.Log;
 
 import org.tanukisoftware.wrapper.WrapperManager;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /*
  *  Copyright 2011 hottuna (dev@robertfoss.se)
@@ -39,25 +35,33 @@ import java.util.Map;
 
 public class RouterManagerHandler implements RequestHandler {
     private final JSONRPC2Helper _helper;
-    private final RouterContext _context;
+    private final RouterFacade _router;
+
+    private final RouterManagerJobs _jobs;
+    private final JobWatcher _watcher;
 
     private final static int SHUTDOWN_WAIT = 1500;
+    private final static long MAX_JOB_WAIT = 30*1000;
 
 
-    public RouterManagerHandler(RouterContext ctx, JSONRPC2Helper helper) {
+    public RouterManagerHandler(RouterFacade router, JSONRPC2Helper helper) {
         _helper = helper;
-        _context = ctx;
+        _router = router;
+        _jobs = router != null ? new RouterManagerJobs(router.getContext()) : null;
+        _watcher = router != null ? new JobWatcher(router.getContext()) : null;
     }
 
     // Reports the method names of the handled requests
     public String[] handledRequests() {
-        return new String[] { "RouterManager" };
+        return new String[] { "RouterManager", "JobStatus" };
     }
 
     // Processes the requests
     public JSONRPC2Response process(JSONRPC2Request req, MessageContext ctx) {
         if (req.getMethod().equals("RouterManager")) {
             return process(req);
+        } else if (req.getMethod().equals("JobStatus")) {
+            return processJobStatus(req);
         } else {
             // Method name not supported
             return new JSONRPC2Response(JSONRPC2Error.METHOD_NOT_FOUND,
@@ -70,7 +74,7 @@ public class RouterManagerHandler implements RequestHandler {
         if (err != null)
             return new JSONRPC2Response(err, req.getID());
 
-        if (_context == null) {
+        if (_router == null) {
             return new JSONRPC2Response(new JSONRPC2Error(
                                             JSONRPC2Error.INTERNAL_ERROR.getCode(),
                                             "RouterContext was not initialized. Query failed"),
@@ -79,142 +83,188 @@ public class RouterManagerHandler implements RequestHandler {
         Map<String, Object> inParams = req.getNamedParams();
         final Map<String, Object> outParams = new HashMap<String, Object>(4);
 
-        if (inParams.containsKey("Shutdown")) {
-            outParams.put("Shutdown", null);
-            (new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        Thread.sleep(SHUTDOWN_WAIT);
-                    } catch (InterruptedException e) {}
-                    _context.addShutdownTask(new UpdateWrapperManagerTask(Router.EXIT_HARD));
-                    _context.router().shutdown(Router.EXIT_HARD);
-                }
-            }).start();
-            return new JSONRPC2Response(outParams, req.getID());
-        }
+        if (inParams.containsKey("Shutdown"))
+            return submit("Shutdown", new ShutdownTask(Router.EXIT_HARD), outParams, req);
 
-        if (inParams.containsKey("Restart")) {
-            outParams.put("Restart", null);
-            (new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        Thread.sleep(SHUTDOWN_WAIT);
-                    } catch (InterruptedException e) {}
-                    _context.addShutdownTask(new UpdateWrapperManagerTask(Router.EXIT_HARD_RESTART));
-                    _context.router().shutdown(Router.EXIT_HARD_RESTART);
-                }
-            }).start();
-            return new JSONRPC2Response(outParams, req.getID());
-        }
+        if (inParams.containsKey("Restart"))
+            return submit("Restart", new ShutdownTask(Router.EXIT_HARD_RESTART), outParams, req);
 
-        if (inParams.containsKey("ShutdownGraceful")) {
-            outParams.put("ShutdownGraceful", null);
-            (new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        Thread.sleep(SHUTDOWN_WAIT);
-                    } catch (InterruptedException e) {}
-                    _context.addShutdownTask(new UpdateWrapperManagerTask(Router.EXIT_GRACEFUL));
-                    _context.router().shutdownGracefully();
-                }
-            }).start();
-            return new JSONRPC2Response(outParams, req.getID());
-        }
+        if (inParams.containsKey("ShutdownGraceful"))
+            return submit("ShutdownGraceful", new ShutdownTask(Router.EXIT_GRACEFUL), outParams, req);
 
-        if (inParams.containsKey("RestartGraceful")) {
-            outParams.put("RestartGraceful", null);
-            (new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        Thread.sleep(SHUTDOWN_WAIT);
-                    } catch (InterruptedException e) {}
-                    _context.addShutdownTask(new UpdateWrapperManagerTask(Router.EXIT_GRACEFUL_RESTART));
-                    _context.router().shutdownGracefully(Router.EXIT_GRACEFUL_RESTART);
-                }
-            }).start();
-            return new JSONRPC2Response(outParams, req.getID());
-        }
+        if (inParams.containsKey("RestartGraceful"))
+            return submit("RestartGraceful", new ShutdownTask(Router.EXIT_GRACEFUL_RESTART), outParams, req);
 
         if (inParams.containsKey("Reseed")) {
-            outParams.put("Reseed", null);
-            (new Thread() {
-                @Override
-                public void run() {
-                    ReseedChecker reseeder = new ReseedChecker(_context);
-                    reseeder.requestReseed();
+            return submit("Reseed", new RouterManagerJobs.Task() {
+                public Object run(RouterManagerJobs.Job job) throws Exception {
+                    if (!_router.requestReseed() && !_router.isReseedInProgress())
+                        return "Reseed not started";
+                    // requestReseed() runs it in its own thread
+                    _watcher.watch(new JobWatcher.Watched() {
+                        public boolean isInProgress() {
+                            return _router.isReseedInProgress();
+                        }
+
+                        public String getStatus() {
+                            return _router.getReseedStatus();
+                        }
+
+                        public Object getResult() {
+                            String error = _router.getReseedError();
+                            return error.length() > 0 ? error : _router.getReseedStatus();
+                        }
+                    }, job);
+                    return RouterManagerJobs.PENDING;
                 }
-            }).start();
-            return new JSONRPC2Response(outParams, req.getID());
+            }, outParams, req);
         }
 
         if (inParams.containsKey("FindUpdates")) {
-            Thread t = new Thread() {
-                @Override
-                public void run() {
-                    ClientAppManager clmgr = I2PAppContext.getCurrentContext().clientAppManager();
-                    if (clmgr == null) {
-                        outParams.put("FindUpdates", "ClientAppManager is null");
-                        return;
-                    }
-                    UpdateManager upmgr = (UpdateManager) clmgr.getRegisteredApp(UpdateManager.APP_NAME);
-                    if (upmgr == null) {
-                        outParams.put("FindUpdates", "UpdateManager is null");
-                        return;
-                    }
-                    boolean updateIsAvailable = upmgr.checkAvailable(UpdateType.ROUTER_SIGNED) != null;
-                    outParams.put("FindUpdates", updateIsAvailable);
-                }
-            };
-            t.start();
-            try {
-                t.join();
-            } catch (InterruptedException e) {}
+            // checkAvailable() only looks at what the last news fetch found, no need for a thread
+            UpdateManager upmgr = getUpdateManager(outParams, "FindUpdates");
+            if (upmgr != null) {
+                boolean updateIsAvailable = upmgr.checkAvailable(UpdateType.ROUTER_SIGNED) != null;
+                outParams.put("FindUpdates", updateIsAvailable);
+            }
             return new JSONRPC2Response(outParams, req.getID());
         }
 
         if (inParams.containsKey("Update")) {
-            Thread t = new Thread() {
-                @Override
-                public void run() {
-                    ClientAppManager clmgr = I2PAppContext.getCurrentContext().clientAppManager();
-                    if (clmgr == null) {
-                        outParams.put("Update", "ClientAppManager is null");
-                        return;
-                    }
-                    UpdateManager upmgr = (UpdateManager) clmgr.getRegisteredApp(UpdateManager.APP_NAME);
-                    if (upmgr == null) {
-                        outParams.put("Update", "UpdateManager is null");
-                        return;
-                    }
+            final UpdateManager upmgr = getUpdateManager(outParams, "Update");
+            if (upmgr == null)
+                return new JSONRPC2Response(outParams, req.getID());
+            return submit("Update", new RouterManagerJobs.Task() {
+                public Object run(RouterManagerJobs.Job job) throws Exception {
                     boolean updateStarted = upmgr.update(UpdateType.ROUTER_SIGNED);
-                    if (!updateStarted) {
-                        outParams.put("Update", "Update not started");
-                        return;
-                    }
-                    boolean isUpdating = upmgr.isUpdateInProgress(UpdateType.ROUTER_SIGNED);
-                    while (isUpdating) {
-                        try {
-                            Thread.sleep(100);
-                        } catch (Exception e) {}
-                        isUpdating = upmgr.isUpdateInProgress(UpdateType.ROUTER_SIGNED);
-                    }
-                    outParams.put("Update", upmgr.getStatus());
+                    if (!updateStarted)
+                        return "Update not started";
+                    _watcher.watch(new JobWatcher.Watched() {
+                        public boolean isInProgress() {
+                            return upmgr.isUpdateInProgress(UpdateType.ROUTER_SIGNED);
+                        }
+
+                        public String getStatus() {
+                            return upmgr.getStatus();
+                        }
+
+                        public Object getResult() {
+                            return upmgr.getStatus();
+                        }
+                    }, job);
+                    return RouterManagerJobs.PENDING;
                 }
-            };
-            t.start();
-            try {
-                t.join();
-            } catch (InterruptedException e) {}
-            return new JSONRPC2Response(outParams, req.getID());
+            }, outParams, req);
+        }
+
+        return new JSONRPC2Response(outParams, req.getID());
+    }
+
+    /**
+     *  Params: Id, optional
+     *          Wait, optional, with Id, ms to wait for the job to finish, max MAX_JOB_WAIT.
+     *          Ignored when too many requests are already waiting, check the State.
+     *  Result: Job, the job with that Id, or Jobs, all running and recent ones.
+     *  Each has Id, Name, State (QUEUED, RUNNING, DONE or FAILED), Created,
+     *  and when known Started, Finished, Progress and Result.
+     *
+     *  @since 0.12
+     */
+    private JSONRPC2Response processJobStatus(JSONRPC2Request req) {
+        JSONRPC2Error err = _helper.validateParams(null, req);
+        if (err != null)
+            return new JSONRPC2Response(err, req.getID());
+
+        if (_jobs == null) {
+            return new JSONRPC2Response(new JSONRPC2Error(
+                                            JSONRPC2Error.INTERNAL_ERROR.getCode(),
+                                            "RouterContext was not initialized. Query failed"),
+                                        req.getID());
         }
+        Map<String, Object> outParams = new HashMap<String, Object>(4);
+        Object id = req.getNamedParams().get("Id");
+        if (id == null) {
+            outParams.put("Jobs", _jobs.getStatus());
+        } else {
+            Object wait = req.getNamedParams().get("Wait");
+            if (wait != null && !(wait instanceof Number))
+                return new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.INVALID_PARAMS.getCode(),
+                                            "Wait must be a number"), req.getID());
+            long maxWait = wait != null ? Math.max(0, Math.min(MAX_JOB_WAIT, ((Number) wait).longValue())) : 0;
+            Map<String, Object> job = null;
+            if (id instanceof Number) {
+                try {
+                    job = _jobs.getStatus(((Number) id).intValue(), maxWait);
+                } catch (InterruptedException ie) {
+                    job = _jobs.getStatus(((Number) id).intValue());
+                }
+            }
+            if (job == null)
+                return new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.INVALID_PARAMS.getCode(),
+                                            "Unknown job " + id), req.getID());
+            outParams.put("Job", job);
+        }
+        return new JSONRPC2Response(outParams, req.getID());
+    }
 
+    /**
+     *  Queue the task, and answer with its JobId at once
+     *  @since 0.12
+     */
+    private JSONRPC2Response submit(String name, RouterManagerJobs.Task task,
+                                    Map<String, Object> outParams, JSONRPC2Request req) {
+        int id;
+        try {
+            id = _jobs.submit(name, task);
+        } catch (RejectedExecutionException ree) {
+            return new JSONRPC2Response(new JSONRPC2Error(JSONRPC2Error.INTERNAL_ERROR.getCode(),
+                                        "Too many jobs, try again later"), req.getID());
+        }
+        outParams.put(name, null);
+        outParams.put("JobId", id);
         return new JSONRPC2Response(outParams, req.getID());
     }
 
+    /**
+     *  @return null on failure, with the reason put in outParams
+     *  @since 0.12
+     */
+    private UpdateManager getUpdateManager(Map<String, Object> outParams, String key) {
+        UpdateManager upmgr = _router.getUpdateManager();
+        if (upmgr == null)
+            outParams.put(key, "UpdateManager is null");
+        return upmgr;
+    }
+
+    /**
+     *  Stop taking jobs, and fail those waiting on an update or reseed
+     *  @since 0.12
+     */
+    public void stopJobs() {
+        if (_watcher != null)
+            _watcher.stop();
+        if (_jobs != null)
+            _jobs.stop();
+    }
+
+    /**
+     *  Shutdown or restart, after SHUTDOWN_WAIT so the response gets out first
+     *  @since 0.12
+     */
+    private class ShutdownTask implements RouterManagerJobs.Task {
+        private final int _exitCode;
+
+        public ShutdownTask(int exitCode) {
+            _exitCode = exitCode;
+        }
+
+        public Object run(RouterManagerJobs.Job job) throws Exception {
+            Thread.sleep(SHUTDOWN_WAIT);
+            _router.shutdown(_exitCode);
+            return null;
+        }
+    }
+
     public static class UpdateWrapperManagerTask implements Runnable {
         private int _exitCode;
         public UpdateWrapperManagerTask(int exitCode) {
@@ -0,0 +1,263 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+import net.i2p.I2PAppContext;
+import net.i2p.util.I2PAppThread;
+import net.i2p.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the RouterManager operations on a small bounded pool,
+ * and keeps their state for JobStatus.
+ *
+ * There is at most one queued or running job per name, asking again
+ * returns the existing job. The last MAX_FINISHED finished jobs are kept.
+ *
+ * A task that only starts something and has it watched, instead of
+ * waiting for it on a pool thread, returns PENDING, and the job is
+ * finished later with complete() or fail().
+ * getStatus(id, maxWait) parks the caller until the job is finished.
+ * Those are server threads, so at most MAX_WAITERS wait at once,
+ * others get the status at once and have to poll.
+ *
+ * @since 0.12
+ */
+class RouterManagerJobs {
+
+    private static final int THREADS = 2;
+    private static final int QUEUE_SIZE = 8;
+    private static final int MAX_FINISHED = 32;
+    private static final int MAX_WAITERS = 4;
+
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    /** returned by a task that is finished later */
+    public static final Object PENDING = new Object();
+
+    public interface Task {
+        /**
+         * @param job for setProgress()
+         * @return the result, must be a JSON type, may be null,
+         *         or PENDING if complete() or fail() will be called later
+         */
+        public Object run(Job job) throws Exception;
+    }
+
+    private final I2PAppContext _context;
+    private final Log _log;
+    private final ThreadPoolExecutor _executor;
+    // all below guarded by this
+    private int _nextId = 1;
+    /** queued and running, by name */
+    private final Map<String, Job> _active = new HashMap<String, Job>();
+    /** all jobs we know, by ID */
+    private final Map<Integer, Job> _jobs = new LinkedHashMap<Integer, Job>();
+    private final ArrayDeque<Job> _finished = new ArrayDeque<Job>(MAX_FINISHED);
+    /** callers parked in getStatus(id, maxWait) */
+    private int _waiters;
+
+    public class Job implements Runnable {
+        private final int _id;
+        private final String _name;
+        private final Task _task;
+        private final long _created;
+        // all below guarded by RouterManagerJobs.this
+        private State _state = State.QUEUED;
+        private String _progress;
+        private Object _result;
+        private long _started;
+        private long _finished;
+
+        Job(int id, String name, Task task) {
+            _id = id;
+            _name = name;
+            _task = task;
+            _created = _context.clock().now();
+        }
+
+        public int getId() {
+            return _id;
+        }
+
+        /**
+         * For the task to report how far it got
+         */
+        public void setProgress(String progress) {
+            synchronized (RouterManagerJobs.this) {
+                _progress = progress;
+            }
+        }
+
+        /**
+         * Finish a job whose task returned PENDING
+         * @param result must be a JSON type, may be null
+         */
+        public void complete(Object result) {
+            finish(this, State.DONE, result);
+        }
+
+        /**
+         * Finish a job whose task returned PENDING
+         */
+        public void fail(String reason) {
+            finish(this, State.FAILED, reason);
+        }
+
+        public void run() {
+            synchronized (RouterManagerJobs.this) {
+                _state = State.RUNNING;
+                _started = _context.clock().now();
+            }
+            Object result;
+            State state;
+            try {
+                result = _task.run(this);
+                state = State.DONE;
+            } catch (Exception e) {
+                if (_log.shouldWarn())
+                    _log.warn("Job " + _name + " failed", e);
+                result = e.toString();
+                state = State.FAILED;
+            }
+            if (result != PENDING)
+                finish(this, state, result);
+        }
+
+        /** caller must synch */
+        private boolean isFinished() {
+            return _state == State.DONE || _state == State.FAILED;
+        }
+
+        /** caller must synch */
+        Map<String, Object> toMap() {
+            Map<String, Object> rv = new HashMap<String, Object>(16);
+            rv.put("Id", _id);
+            rv.put("Name", _name);
+            rv.put("State", _state.name());
+            rv.put("Created", _created);
+            if (_started > 0)
+                rv.put("Started", _started);
+            if (_finished > 0)
+                rv.put("Finished", _finished);
+            if (_progress != null)
+                rv.put("Progress", _progress);
+            if (isFinished())
+                rv.put("Result", _result);
+            return rv;
+        }
+    }
+
+    public RouterManagerJobs(I2PAppContext ctx) {
+        _context = ctx;
+        _log = ctx.logManager().getLog(RouterManagerJobs.class);
+        _executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                                           new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+                                           new JobThreadFactory());
+        _executor.allowCoreThreadTimeOut(true);
+    }
+
+    private static class JobThreadFactory implements ThreadFactory {
+        private int _count;
+
+        public synchronized Thread newThread(Runnable r) {
+            Thread t = new I2PAppThread(r, "I2PControl Job " + (++_count), true);
+            return t;
+        }
+    }
+
+    /**
+     * Queue the task, unless one with the same name is queued or running.
+     *
+     * @return the new or the existing job's ID
+     * @throws RejectedExecutionException if the queue is full or we are stopped
+     */
+    public synchronized int submit(String name, Task task) {
+        Job job = _active.get(name);
+        if (job != null)
+            return job._id;
+        job = new Job(_nextId++, name, task);
+        _executor.execute(job);
+        _active.put(name, job);
+        _jobs.put(job._id, job);
+        return job._id;
+    }
+
+    /**
+     * @return null if unknown or expired
+     */
+    public synchronized Map<String, Object> getStatus(int id) {
+        Job job = _jobs.get(id);
+        return job != null ? job.toMap() : null;
+    }
+
+    /**
+     * Blocks until the job is finished, or maxWait has passed.
+     * Returns at once if MAX_WAITERS callers are already waiting.
+     *
+     * @param maxWait in ms, 0 to return at once
+     * @return null if unknown or expired
+     */
+    public synchronized Map<String, Object> getStatus(int id, long maxWait) throws InterruptedException {
+        Job job = _jobs.get(id);
+        if (job == null)
+            return null;
+        if (job.isFinished() || maxWait <= 0 || _waiters >= MAX_WAITERS)
+            return job.toMap();
+        _waiters++;
+        try {
+            long end = System.currentTimeMillis() + maxWait;
+            long remaining = maxWait;
+            while (!job.isFinished() && remaining > 0) {
+                wait(remaining);
+                remaining = end - System.currentTimeMillis();
+            }
+        } finally {
+            _waiters--;
+        }
+        return job.toMap();
+    }
+
+    /**
+     * @return all active and retained jobs, oldest first
+     */
+    public synchronized List<Map<String, Object>> getStatus() {
+        List<Map<String, Object>> rv = new ArrayList<Map<String, Object>>(_jobs.size());
+        for (Job job : _jobs.values()) {
+            rv.add(job.toMap());
+        }
+        return rv;
+    }
+
+    private synchronized void finish(Job job, State state, Object result) {
+        if (job.isFinished())
+            return;
+        job._state = state;
+        job._result = result;
+        job._finished = _context.clock().now();
+        _active.remove(job._name);
+        if (_finished.size() >= MAX_FINISHED) {
+            Job old = _finished.removeFirst();
+            _jobs.remove(old._id);
+        }
+        _finished.addLast(job);
+        notifyAll();
+    }
+
+    /**
+     * No new jobs. Queued and running ones are left to finish, without
+     * interrupting them, as we may be stopped by the very shutdown job.
+     */
+    public void stop() {
+        _executor.shutdown();
+    }
+}
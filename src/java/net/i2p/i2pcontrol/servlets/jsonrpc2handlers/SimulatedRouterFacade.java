@@ -0,0 +1,455 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+import net.i2p.I2PAppContext;
+import net.i2p.data.Certificate;
+import net.i2p.data.Hash;
+import net.i2p.data.PublicKey;
+import net.i2p.data.SigningPublicKey;
+import net.i2p.data.router.RouterAddress;
+import net.i2p.data.router.RouterIdentity;
+import net.i2p.data.router.RouterInfo;
+import net.i2p.stat.StatManager;
+import net.i2p.update.UpdateManager;
+import net.i2p.util.Log;
+import net.i2p.util.OrderedProperties;
+import net.i2p.util.RandomSource;
+import net.i2p.util.SimpleTimer2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A made up router, for running and load testing I2PControl
+ * without one, see i2pcontrol.router.simulated.
+ *
+ * Every TICK the values move: bandwidth follows a slow wave with
+ * noise, the counts do a bounded random walk, and a few NetDb entries
+ * are replaced by new ones. The bandwidth and a few counts are also
+ * fed to RateStats of the real names, so GetRate has data.
+ * The config is kept in memory, starting with the usual network settings.
+ * Shutdowns only reset the uptime, and a reseed adds some routers.
+ *
+ * @since 0.12
+ */
+public class SimulatedRouterFacade implements RouterFacade {
+
+    private static final long TICK = 1000;
+    /** of the bandwidth wave */
+    private static final long PERIOD = 10*60*1000;
+    private static final int NETDB_SIZE = 3000;
+    private static final int NETDB_CHURN = 3;
+    private static final int RESEED_ROUTERS = 100;
+    /** per tick, of the routers over NETDB_SIZE */
+    private static final int NETDB_TRIM = 5;
+    private static final long RESEED_TIME = 10*1000;
+    private static final long[] RATES = { 60*1000, 10*60*1000, 60*60*1000 };
+    private static final String VERSION = "0.9.34-0-simulated";
+    private static final String[] VERSIONS = { "0.9.30", "0.9.31", "0.9.32", "0.9.33", "0.9.34" };
+    private static final String[] CAPS = { "KU", "LU", "LR", "MR", "NR", "NfR", "OR", "OfR", "PR", "PfR", "XR", "XfR", "LRU" };
+
+    private final I2PAppContext _context;
+    private final Log _log;
+    private final RandomSource _random;
+    private final Map<String, String> _config = new ConcurrentHashMap<String, String>();
+    private final Map<Hash, RouterInfo> _netDb = new ConcurrentHashMap<Hash, RouterInfo>();
+    private final RouterInfo _us;
+    private volatile long _started;
+    private volatile double _recvBps, _sendBps, _recvBps15s, _sendBps15s;
+    private volatile int _participating, _exploratoryIn, _exploratoryOut, _clientIn, _clientOut;
+    private volatile int _activePeers, _fastPeers, _highCapPeers, _jobsReady;
+    private volatile long _maxLag;
+    private volatile long _reseedUntil;
+    private volatile String _reseedStatus = "";
+    // guarded by this
+    private Ticker _ticker;
+
+    public SimulatedRouterFacade(I2PAppContext ctx) {
+        _context = ctx;
+        _log = ctx.logManager().getLog(SimulatedRouterFacade.class);
+        _random = ctx.random();
+        _started = ctx.clock().now();
+        int port = 10000 + _random.nextInt(20000);
+        _config.put("i2np.ntcp.port", Integer.toString(port));
+        _config.put("i2np.ntcp.autoport", "false");
+        _config.put("i2np.ntcp.autoip", "true");
+        _config.put("i2np.udp.port", Integer.toString(port));
+        _config.put("i2np.udp.internalPort", Integer.toString(port));
+        _config.put("i2np.udp.addressSources", "local,upnp,ssu");
+        _config.put("i2np.upnp.enable", "true");
+        _config.put("i2np.laptopMode", "false");
+        _config.put("i2np.bandwidth.inboundKBytesPerSecond", "256");
+        _config.put("i2np.bandwidth.inboundBurstKBytesPerSecond", "281");
+        _config.put("i2np.bandwidth.inboundBurstKBytes", "5620");
+        _config.put("i2np.bandwidth.outboundKBytesPerSecond", "128");
+        _config.put("i2np.bandwidth.outboundBurstKBytesPerSecond", "140");
+        _config.put("i2np.bandwidth.outboundBurstKBytes", "2800");
+        _config.put("router.sharePercentage", "80");
+        _config.put("router.firstInstalled", Long.toString(_started - 30*24*60*60*1000L));
+        _config.put("router.firstVersion", "0.9.30");
+        _config.put("router.previousVersion", "0.9.33");
+        _config.put("router.updatePolicy", "download");
+        _config.put("router.newsRefreshFrequency", "86400000");
+        _config.put("routerconsole.lang", "en");
+        _config.put("routerconsole.theme", "light");
+        _config.put("time.disabled", "false");
+        _config.put("stat.full", "false");
+        _us = createRouterInfo("LR", VERSION, "192.0.2.1", port);
+        for (int i = 0; i < NETDB_SIZE; i++) {
+            addRandomRouter();
+        }
+        StatManager sm = ctx.statManager();
+        sm.createRequiredRateStat("bw.recvRate", "Bytes/s received (simulated)", "Bandwidth", RATES);
+        sm.createRequiredRateStat("bw.sendRate", "Bytes/s sent (simulated)", "Bandwidth", RATES);
+        sm.createRequiredRateStat("tunnel.participatingTunnels", "Participating tunnels (simulated)", "Tunnels", RATES);
+        sm.createRequiredRateStat("router.activePeers", "Active peers (simulated)", "Throttle", RATES);
+        sm.createRequiredRateStat("jobQueue.readyJobs", "Ready jobs (simulated)", "JobQueue", RATES);
+        _participating = 1500;
+        _exploratoryIn = 4;
+        _exploratoryOut = 4;
+        _clientIn = 12;
+        _clientOut = 12;
+        _activePeers = 300;
+        _fastPeers = 30;
+        _highCapPeers = 75;
+        tick(_started);
+        _recvBps15s = _recvBps;
+        _sendBps15s = _sendBps;
+        synchronized (this) {
+            _ticker = new Ticker();
+        }
+        _log.logAlways(Log.WARN, "Using a simulated router, all router data is made up");
+    }
+
+    private class Ticker extends SimpleTimer2.TimedEvent {
+        private int _count;
+
+        public Ticker() {
+            super(_context.simpleTimer2(), TICK);
+        }
+
+        public void timeReached() {
+            synchronized (SimulatedRouterFacade.this) {
+                if (_ticker != this)
+                    return;  // stopped
+            }
+            try {
+                tick(_context.clock().now());
+                // as the router's stat coalescer does
+                if (++_count % 20 == 0)
+                    _context.statManager().coalesceStats();
+            } catch (RuntimeException re) {
+                _log.error("Simulation tick failed", re);
+            } finally {
+                // one bad tick doesn't end the simulation
+                synchronized (SimulatedRouterFacade.this) {
+                    if (_ticker == this)
+                        schedule(TICK);
+                }
+            }
+        }
+    }
+
+    private void tick(long now) {
+        // in KBps
+        double in = getProperty("i2np.bandwidth.inboundKBytesPerSecond", 256);
+        double out = getProperty("i2np.bandwidth.outboundKBytesPerSecond", 128);
+        double wave = 0.55 + 0.3 * Math.sin(2 * Math.PI * (now % PERIOD) / PERIOD);
+        _recvBps = Math.max(0, in * 1024 * (wave + 0.1 * _random.nextGaussian()));
+        _sendBps = Math.max(0, out * 1024 * (wave + 0.1 * _random.nextGaussian()));
+        _recvBps15s += (_recvBps - _recvBps15s) / 15;
+        _sendBps15s += (_sendBps - _sendBps15s) / 15;
+        _participating = walk(_participating, 20, 100, 5000);
+        _exploratoryIn = walk(_exploratoryIn, 1, 2, 8);
+        _exploratoryOut = walk(_exploratoryOut, 1, 2, 8);
+        _clientIn = walk(_clientIn, 1, 4, 30);
+        _clientOut = walk(_clientOut, 1, 4, 30);
+        _activePeers = walk(_activePeers, 5, 50, 800);
+        _fastPeers = walk(_fastPeers, 1, 8, 75);
+        _highCapPeers = walk(_highCapPeers, 1, 20, 150);
+        _jobsReady = _random.nextInt(10) < 8 ? 0 : _random.nextInt(20);
+        _maxLag = _random.nextInt(10) < 9 ? _random.nextInt(5) : _random.nextInt(500);
+
+        List<Hash> keys = new ArrayList<Hash>(_netDb.keySet());
+        for (int i = 0; i < NETDB_CHURN && !keys.isEmpty(); i++) {
+            _netDb.remove(keys.get(_random.nextInt(keys.size())));
+            addRandomRouter();
+        }
+        // expire what reseeds added, a little at a time
+        int excess = Math.min(_netDb.size() - NETDB_SIZE, NETDB_TRIM);
+        // hash order, as random as any
+        for (Iterator<Hash> iter = _netDb.keySet().iterator(); excess > 0 && iter.hasNext(); excess--) {
+            iter.next();
+            iter.remove();
+        }
+        if (_reseedUntil > 0 && now >= _reseedUntil) {
+            for (int i = 0; i < RESEED_ROUTERS; i++) {
+                addRandomRouter();
+            }
+            _reseedStatus = "Reseeding: " + RESEED_ROUTERS + " router infos fetched (simulated)";
+            _reseedUntil = 0;
+        }
+
+        StatManager sm = _context.statManager();
+        sm.addRateData("bw.recvRate", (long) _recvBps);
+        sm.addRateData("bw.sendRate", (long) _sendBps);
+        sm.addRateData("tunnel.participatingTunnels", _participating);
+        sm.addRateData("router.activePeers", _activePeers);
+        sm.addRateData("jobQueue.readyJobs", _jobsReady);
+    }
+
+    /** a step of at most step, kept within min and max */
+    private int walk(int v, int step, int min, int max) {
+        v += _random.nextInt(2 * step + 1) - step;
+        return Math.max(min, Math.min(max, v));
+    }
+
+    private void addRandomRouter() {
+        String caps = CAPS[_random.nextInt(CAPS.length)];
+        String version = VERSIONS[_random.nextInt(VERSIONS.length)];
+        String host = "198.51.100." + (1 + _random.nextInt(254));
+        RouterInfo ri = createRouterInfo(caps, version, host, 10000 + _random.nextInt(20000));
+        ri.setPublished(_context.clock().now() - _random.nextInt(60*60*1000));
+        _netDb.put(ri.getIdentity().calculateHash(), ri);
+    }
+
+    /**
+     * Unsigned, with random keys
+     */
+    private RouterInfo createRouterInfo(String caps, String version, String host, int port) {
+        byte[] pub = new byte[PublicKey.KEYSIZE_BYTES];
+        _random.nextBytes(pub);
+        byte[] spub = new byte[SigningPublicKey.KEYSIZE_BYTES];
+        _random.nextBytes(spub);
+        RouterIdentity ident = new RouterIdentity();
+        ident.setPublicKey(new PublicKey(pub));
+        ident.setSigningPublicKey(new SigningPublicKey(spub));
+        ident.setCertificate(Certificate.NULL_CERT);
+        RouterInfo ri = new RouterInfo();
+        ri.setIdentity(ident);
+        ri.setPublished(_context.clock().now());
+        Properties opts = new OrderedProperties();
+        opts.setProperty(RouterInfo.PROP_CAPABILITIES, caps);
+        opts.setProperty(RouterInfo.PROP_NETWORK_ID, "2");
+        opts.setProperty("router.version", version);
+        ri.setOptions(opts);
+        List<RouterAddress> addrs = new ArrayList<RouterAddress>(2);
+        for (String style : new String[] { "NTCP", "SSU" }) {
+            OrderedProperties ao = new OrderedProperties();
+            ao.setProperty("host", host);
+            ao.setProperty("port", Integer.toString(port));
+            addrs.add(new RouterAddress(style, ao, style.equals("NTCP") ? 10 : 5));
+        }
+        ri.setAddresses(addrs);
+        return ri;
+    }
+
+    public I2PAppContext getContext() {
+        return _context;
+    }
+
+    public synchronized void stop() {
+        if (_ticker != null) {
+            _ticker.cancel();
+            _ticker = null;
+        }
+    }
+
+    ////// RouterInfo
+
+    public String getVersion() {
+        return VERSION;
+    }
+
+    public long getUptime() {
+        return _context.clock().now() - _started;
+    }
+
+    public String getTunnelStatus() {
+        return _participating < 4500 ? "Accepting tunnels" : "Rejecting tunnels: High number of requests";
+    }
+
+    public int getNetworkStatus() {
+        // testing for the first minute, as a real router would be
+        NetworkStatusEvaluator.NETWORK_STATUS s = getUptime() < 60*1000 ?
+                                                  NetworkStatusEvaluator.NETWORK_STATUS.TESTING :
+                                                  NetworkStatusEvaluator.NETWORK_STATUS.OK;
+        return s.ordinal();
+    }
+
+    public double getReceiveBps() {
+        return _recvBps;
+    }
+
+    public double getSendBps() {
+        return _sendBps;
+    }
+
+    public double getReceiveBps15s() {
+        return _recvBps15s;
+    }
+
+    public double getSendBps15s() {
+        return _sendBps15s;
+    }
+
+    public int getParticipatingTunnelCount() {
+        return _participating;
+    }
+
+    public int getExploratoryInboundTunnelCount() {
+        return _exploratoryIn;
+    }
+
+    public int getExploratoryOutboundTunnelCount() {
+        return _exploratoryOut;
+    }
+
+    public int getClientInboundTunnelCount() {
+        return _clientIn;
+    }
+
+    public int getClientOutboundTunnelCount() {
+        return _clientOut;
+    }
+
+    public int getKnownRouterCount() {
+        return _netDb.size();
+    }
+
+    public int getActivePeerCount() {
+        return _activePeers;
+    }
+
+    public int getFastPeerCount() {
+        return _fastPeers;
+    }
+
+    public int getHighCapacityPeerCount() {
+        return _highCapPeers;
+    }
+
+    public int getJobQueueReadyCount() {
+        return _jobsReady;
+    }
+
+    public long getJobQueueMaxLag() {
+        return _maxLag;
+    }
+
+    ////// NetDb
+
+    public RouterInfo getRouterInfo() {
+        return _us;
+    }
+
+    public Set<Hash> getAllRouters() {
+        return new HashSet<Hash>(_netDb.keySet());
+    }
+
+    public RouterInfo lookupRouterInfoLocally(Hash key) {
+        return _netDb.get(key);
+    }
+
+    ////// Config
+
+    public String getProperty(String name) {
+        String rv = _config.get(name);
+        return rv != null ? rv : System.getProperty(name);
+    }
+
+    public String getProperty(String name, String defaultValue) {
+        String rv = getProperty(name);
+        return rv != null ? rv : defaultValue;
+    }
+
+    public int getProperty(String name, int defaultValue) {
+        String rv = getProperty(name);
+        if (rv == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(rv.trim());
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+    public String getConfigSetting(String name) {
+        return _config.get(name);
+    }
+
+    public Map<String, String> getConfigMap() {
+        return Collections.unmodifiableMap(_config);
+    }
+
+    public Set<String> getConfigSettings() {
+        return new HashSet<String>(_config.keySet());
+    }
+
+    public synchronized boolean saveConfig(Map<String, String> toAdd, Collection<String> toRemove) {
+        if (toAdd != null)
+            _config.putAll(toAdd);
+        if (toRemove != null) {
+            for (String k : toRemove) {
+                _config.remove(k);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return null, the config is only in memory
+     */
+    public String getConfigFilename() {
+        return null;
+    }
+
+    /**
+     * Nothing to do, the next tick uses the new limits
+     */
+    public void reinitializeBandwidth() {}
+
+    ////// RouterManager
+
+    /**
+     * Only restarts the uptime
+     */
+    public void shutdown(int exitCode) {
+        _log.logAlways(Log.WARN, "Simulated shutdown, exit code " + exitCode);
+        _started = _context.clock().now();
+    }
+
+    public boolean requestReseed() {
+        if (isReseedInProgress())
+            return false;
+        _reseedStatus = "Reseeding: fetching seed data (simulated)";
+        _reseedUntil = _context.clock().now() + RESEED_TIME;
+        return true;
+    }
+
+    public boolean isReseedInProgress() {
+        return _reseedUntil > 0;
+    }
+
+    public String getReseedStatus() {
+        return _reseedStatus;
+    }
+
+    public String getReseedError() {
+        return "";
+    }
+
+    /**
+     * @return null, no updates
+     */
+    public UpdateManager getUpdateManager() {
+        return null;
+    }
+}
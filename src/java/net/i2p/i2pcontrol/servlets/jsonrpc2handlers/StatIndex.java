@@ -0,0 +1,135 @@
+package net.i2p.i2pcontrol.servlets.jsonrpc2handlers;
+
+import net.i2p.I2PAppContext;
+import net.i2p.stat.RateStat;
+import net.i2p.stat.StatManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A sorted index of the RateStat names and groups, for ListStats.
+ *
+ * StatManager has no registration callback, and getRateNames() copies
+ * the whole set, so the index is checked against it at most every
+ * CHECK_INTERVAL, or when the caller says the stats changed.
+ * New stats are merged into the sorted arrays. If any stat went away,
+ * the index is rebuilt.
+ *
+ * @since 0.12
+ */
+class StatIndex {
+
+    private static final long CHECK_INTERVAL = 30*1000;
+
+    private final I2PAppContext _context;
+    private volatile Index _index = new Index(new String[0], new String[0]);
+    // guarded by this
+    private long _checkedAt;
+    private int _lastVersion = -1;
+
+    /** immutable */
+    private static class Index {
+        /** sorted */
+        final String[] names;
+        /** group of each name */
+        final String[] groups;
+
+        Index(String[] names, String[] groups) {
+            this.names = names;
+            this.groups = groups;
+        }
+    }
+
+    public StatIndex(I2PAppContext ctx) {
+        _context = ctx;
+    }
+
+    /**
+     * The stats matching all the non-null filters, sorted by name.
+     *
+     * @param version changes when the caller knows stats were added or removed,
+     *                forcing a check
+     * @param prefix may be null
+     * @param substring may be null
+     * @param group exact match, may be null
+     * @return the matching RateStats, non-null
+     */
+    public List<RateStat> find(int version, String prefix, String substring, String group) {
+        Index idx = update(version);
+        String[] names = idx.names;
+        int from = 0;
+        int to = names.length;
+        if (prefix != null && prefix.length() > 0) {
+            from = Arrays.binarySearch(names, prefix);
+            if (from < 0)
+                from = -(from + 1);
+            to = from;
+            while (to < names.length && names[to].startsWith(prefix))
+                to++;
+        }
+        StatManager sm = _context.statManager();
+        List<RateStat> rv = new ArrayList<RateStat>(Math.min(to - from, 64));
+        for (int i = from; i < to; i++) {
+            if (group != null && !group.equals(idx.groups[i]))
+                continue;
+            if (substring != null && !names[i].contains(substring))
+                continue;
+            RateStat rs = sm.getRate(names[i]);
+            // removed since the last check
+            if (rs != null)
+                rv.add(rs);
+        }
+        return rv;
+    }
+
+    private synchronized Index update(int version) {
+        Index idx = _index;
+        long now = _context.clock().now();
+        if (version == _lastVersion && now - _checkedAt < CHECK_INTERVAL)
+            return idx;
+        _lastVersion = version;
+        _checkedAt = now;
+        StatManager sm = _context.statManager();
+        Set<String> current = sm.getRateNames();
+        List<String> added = new ArrayList<String>();
+        for (String name : current) {
+            if (Arrays.binarySearch(idx.names, name) < 0)
+                added.add(name);
+        }
+        if (added.isEmpty() && current.size() == idx.names.length)
+            return idx;
+        String[] names;
+        if (idx.names.length + added.size() == current.size()) {
+            // only additions, merge
+            Collections.sort(added);
+            names = new String[current.size()];
+            int i = 0, j = 0, k = 0;
+            while (i < idx.names.length || j < added.size()) {
+                if (j >= added.size() || (i < idx.names.length && idx.names[i].compareTo(added.get(j)) < 0))
+                    names[k++] = idx.names[i++];
+                else
+                    names[k++] = added.get(j++);
+            }
+        } else {
+            names = current.toArray(new String[current.size()]);
+            Arrays.sort(names);
+        }
+        String[] groups = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            int old = Arrays.binarySearch(idx.names, names[i]);
+            if (old >= 0) {
+                groups[i] = idx.groups[old];
+            } else {
+                RateStat rs = sm.getRate(names[i]);
+                groups[i] = rs != null ? rs.getGroupName() : null;
+            }
+        }
+        idx = new Index(names, groups);
+        _index = idx;
+        return idx;
+    }
+}
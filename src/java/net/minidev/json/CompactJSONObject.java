@@ -0,0 +1,320 @@
+package net.minidev.json;
+
+/*
+ *    Copyright 2011 JSON-SMART authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A JSON object for the common case of a handful of keys. Up to THRESHOLD
+ * entries are kept in a flat key / value array, and looked up by a linear
+ * probe comparing the key reference first, then its hash and content. Past
+ * that, entries are moved to a HashMap.
+ *
+ * Keys are in insertion order until promotion. null keys are not supported.
+ *
+ * @see net.minidev.json.parser.ContainerFactory#FACTORY_COMPACT
+ */
+public class CompactJSONObject extends AbstractMap<String, Object> implements JSONAware, JSONAwareEx,
+		JSONStreamAwareEx {
+	/**
+	 * Max entries kept in the flat array
+	 */
+	public static final int THRESHOLD = 8;
+	private static final int INITIAL_CAPACITY = 4;
+
+	/** k0, v0, k1, v1... null until the first put */
+	private Object[] table;
+	private int[] hashes;
+	private int size;
+	/** not null once promoted */
+	private HashMap<String, Object> map;
+	private int modCount;
+	private Set<Map.Entry<String, Object>> entrySet;
+
+	public CompactJSONObject() {
+	}
+
+	public CompactJSONObject(Map<String, ?> m) {
+		putAll(m);
+	}
+
+	private int indexOf(Object key) {
+		if (size == 0 || key == null)
+			return -1;
+		Object[] t = table;
+		for (int i = 0; i < size; i++) {
+			if (t[i << 1] == key)
+				return i;
+		}
+		int h = key.hashCode();
+		int[] hs = hashes;
+		for (int i = 0; i < size; i++) {
+			if (hs[i] == h && key.equals(t[i << 1]))
+				return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		if (map != null)
+			return map.size();
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (map != null)
+			return map.containsKey(key);
+		return indexOf(key) >= 0;
+	}
+
+	@Override
+	public Object get(Object key) {
+		if (map != null)
+			return map.get(key);
+		int i = indexOf(key);
+		return i < 0 ? null : table[(i << 1) + 1];
+	}
+
+	@Override
+	public Object put(String key, Object value) {
+		if (map != null)
+			return map.put(key, value);
+		if (key == null)
+			throw new NullPointerException("null key");
+		int i = indexOf(key);
+		if (i >= 0) {
+			int vi = (i << 1) + 1;
+			Object old = table[vi];
+			table[vi] = value;
+			return old;
+		}
+		if (size == THRESHOLD) {
+			promote();
+			return map.put(key, value);
+		}
+		if (table == null) {
+			table = new Object[INITIAL_CAPACITY << 1];
+			hashes = new int[INITIAL_CAPACITY];
+		} else if (size == hashes.length) {
+			int cap = Math.min(hashes.length << 1, THRESHOLD);
+			Object[] t = new Object[cap << 1];
+			System.arraycopy(table, 0, t, 0, size << 1);
+			int[] hs = new int[cap];
+			System.arraycopy(hashes, 0, hs, 0, size);
+			table = t;
+			hashes = hs;
+		}
+		table[size << 1] = key;
+		table[(size << 1) + 1] = value;
+		hashes[size] = key.hashCode();
+		size++;
+		modCount++;
+		return null;
+	}
+
+	@Override
+	public Object remove(Object key) {
+		if (map != null)
+			return map.remove(key);
+		int i = indexOf(key);
+		if (i < 0)
+			return null;
+		Object old = table[(i << 1) + 1];
+		removeAt(i);
+		return old;
+	}
+
+	private void removeAt(int i) {
+		int moved = size - i - 1;
+		if (moved > 0) {
+			System.arraycopy(table, (i + 1) << 1, table, i << 1, moved << 1);
+			System.arraycopy(hashes, i + 1, hashes, i, moved);
+		}
+		size--;
+		table[size << 1] = null;
+		table[(size << 1) + 1] = null;
+		modCount++;
+	}
+
+	@Override
+	public void clear() {
+		if (map != null) {
+			map = null;
+		} else if (table != null) {
+			for (int i = 0; i < size << 1; i++)
+				table[i] = null;
+		}
+		size = 0;
+		modCount++;
+	}
+
+	private void promote() {
+		HashMap<String, Object> m = new HashMap<String, Object>();
+		for (int i = 0; i < size; i++)
+			m.put((String) table[i << 1], table[(i << 1) + 1]);
+		map = m;
+		table = null;
+		hashes = null;
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		Set<Map.Entry<String, Object>> es = entrySet;
+		if (es == null) {
+			es = new EntrySet();
+			entrySet = es;
+		}
+		return es;
+	}
+
+	private class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+		@Override
+		public Iterator<Map.Entry<String, Object>> iterator() {
+			if (map != null)
+				return map.entrySet().iterator();
+			return new FlatIterator();
+		}
+
+		@Override
+		public int size() {
+			return CompactJSONObject.this.size();
+		}
+
+		@Override
+		public void clear() {
+			CompactJSONObject.this.clear();
+		}
+	}
+
+	private class FlatIterator implements Iterator<Map.Entry<String, Object>> {
+		private int next;
+		private int last = -1;
+		private int expectedModCount = modCount;
+
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		public Map.Entry<String, Object> next() {
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			if (next >= size)
+				throw new NoSuchElementException();
+			last = next++;
+			return new FlatEntry(last);
+		}
+
+		public void remove() {
+			if (last < 0)
+				throw new IllegalStateException();
+			if (modCount != expectedModCount)
+				throw new ConcurrentModificationException();
+			removeAt(last);
+			next = last;
+			last = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	private class FlatEntry implements Map.Entry<String, Object> {
+		private final String key;
+		private final int index;
+
+		FlatEntry(int index) {
+			this.key = (String) table[index << 1];
+			this.index = index;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public Object getValue() {
+			return table[(index << 1) + 1];
+		}
+
+		public Object setValue(Object value) {
+			int vi = (index << 1) + 1;
+			Object old = table[vi];
+			table[vi] = value;
+			return old;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry))
+				return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Object v = getValue();
+			return getKey().equals(e.getKey()) && (v == null ? e.getValue() == null : v.equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			Object v = getValue();
+			return getKey().hashCode() ^ (v == null ? 0 : v.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return getKey() + "=" + getValue();
+		}
+	}
+
+	/**
+	 * serialize Object as json to an stream
+	 */
+	public void writeJSONString(Appendable out) throws IOException {
+		JSONObject.writeJSON(this, out, JSONValue.COMPRESSION);
+	}
+
+	/**
+	 * serialize Object as json to an stream
+	 */
+	public void writeJSONString(Appendable out, JSONStyle compression) throws IOException {
+		JSONObject.writeJSON(this, out, compression);
+	}
+
+	public String toJSONString() {
+		return JSONObject.toJSONString(this, JSONValue.COMPRESSION);
+	}
+
+	public String toJSONString(JSONStyle compression) {
+		return JSONObject.toJSONString(this, compression);
+	}
+
+	@Override
+	public String toString() {
+		return JSONObject.toJSONString(this, JSONValue.COMPRESSION);
+	}
+}
@@ -0,0 +1,112 @@
+package net.minidev.json;
+
+/*
+ *    Copyright 2011 JSON-SMART authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.math.BigDecimal;
+
+/**
+ * A floating point JSON number that keeps its source text and only converts
+ * it when a value is asked for.
+ *
+ * Produced by the parser with {@link net.minidev.json.parser.JSONParser#USE_LAZY_FLOAT},
+ * so that a request full of numbers the server never reads costs no
+ * Double or BigDecimal parsing. Serializing it writes back the source text.
+ */
+public class LazyNumber extends Number implements Comparable<LazyNumber> {
+	private static final long serialVersionUID = 4311727962151874392L;
+
+	private final String value;
+	private transient BigDecimal big;
+
+	/**
+	 * @param value a valid JSON number
+	 */
+	public LazyNumber(String value) {
+		this.value = value;
+	}
+
+	public int intValue() {
+		return (int) longValue();
+	}
+
+	public long longValue() {
+		if (isIntegral()) {
+			try {
+				return Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				// out of range, fall through
+			}
+		}
+		return bigDecimalValue().longValue();
+	}
+
+	public float floatValue() {
+		return Float.parseFloat(value);
+	}
+
+	public double doubleValue() {
+		return Double.parseDouble(value);
+	}
+
+	/**
+	 * Full precision value, computed once
+	 */
+	public BigDecimal bigDecimalValue() {
+		BigDecimal b = big;
+		if (b == null) {
+			b = new BigDecimal(value);
+			big = b;
+		}
+		return b;
+	}
+
+	public int compareTo(LazyNumber o) {
+		return bigDecimalValue().compareTo(o.bigDecimalValue());
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this)
+			return true;
+		if (!(o instanceof LazyNumber))
+			return false;
+		return compareTo((LazyNumber) o) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		// + 0.0 so that -0 and 0 hash the same, as they compare equal
+		long bits = Double.doubleToLongBits(doubleValue() + 0.0);
+		return (int) (bits ^ (bits >>> 32));
+	}
+
+	/**
+	 * @return the source text
+	 */
+	@Override
+	public String toString() {
+		return value;
+	}
+
+	private boolean isIntegral() {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '.' || c == 'e' || c == 'E')
+				return false;
+		}
+		return true;
+	}
+}
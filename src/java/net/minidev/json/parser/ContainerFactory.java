@@ -19,6 +19,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import net.minidev.json.CompactJSONObject;
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
 
@@ -54,6 +55,22 @@ public interface ContainerFactory {
 		}
 	};
 
+	/**
+	 * Small objects in a flat array, see CompactJSONObject
+	 */
+	public final static ContainerFactory FACTORY_COMPACT = new ContainerFactory() {
+
+		// @Override JDK 1.5 compatibility change
+		public Map<String, Object> createObjectContainer() {
+			return new CompactJSONObject();
+		}
+
+		// @Override JDK 1.5 compatibility change
+		public List<Object> createArrayContainer() {
+			return new JSONArray();
+		}
+	};
+
 	public final static ContainerFactory FACTORY_ORDERED = new ContainerFactory() {
 
 		// @Override JDK 1.5 compatibility change
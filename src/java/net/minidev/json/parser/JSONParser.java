@@ -77,6 +77,13 @@ public class JSONParser {
 	 * @since 1.3.1
 	 */
 	public final static int ACCEPT_TAILLING_SPACE = 512;
+	/**
+	 * Store floating point values as {@link net.minidev.json.LazyNumber},
+	 * which is only converted to double or BigDecimal when read.
+	 * 
+	 * Takes precedence over USE_HI_PRECISION_FLOAT.
+	 */
+	public final static int USE_LAZY_FLOAT = 1024;
 	/**
 	 * smart mode, fastest parsing mode. accept lots of non standard json syntax
 	 * 
@@ -119,6 +126,10 @@ public class JSONParser {
 	private JSONParserInputStream pSBintream;
 	private JSONParserString pString;
 	private JSONParserByteArray pBytes;
+	private int maxLength = Integer.MAX_VALUE;
+	private int maxDepth = Integer.MAX_VALUE;
+	private int maxStringLength = Integer.MAX_VALUE;
+	private int maxMembers = Integer.MAX_VALUE;
 
 	/**
 	 * @deprecated prefer usage of new JSONParser(JSONParser.MODE_*)
@@ -131,13 +142,44 @@ public class JSONParser {
 		this.mode = permissifMode;
 	}
 
+	/**
+	 * Bound the resources a single document may use, unlimited by default.
+	 * A document going over any of them fails with a ParseException of type
+	 * ERROR_LIMIT_EXCEEDED, raised before the offending value is built.
+	 * 
+	 * @param maxLength max document length in chars (bytes for byte[] input)
+	 * @param maxDepth max nesting of objects and arrays
+	 * @param maxStringLength max length of a string or key once unescaped,
+	 *        the same whatever the input, or of a number
+	 * @param maxMembers max members of an object, or elements of an array
+	 */
+	public void setLimits(int maxLength, int maxDepth, int maxStringLength, int maxMembers) {
+		this.maxLength = maxLength;
+		this.maxDepth = maxDepth;
+		this.maxStringLength = maxStringLength;
+		this.maxMembers = maxMembers;
+		if (pStream != null)
+			limit(pStream);
+		if (pSBintream != null)
+			limit(pSBintream);
+		if (pString != null)
+			limit(pString);
+		if (pBytes != null)
+			limit(pBytes);
+	}
+
+	private <T extends JSONParserBase> T limit(T p) {
+		p.setLimits(maxLength, maxDepth, maxStringLength, maxMembers);
+		return p;
+	}
+
 	/**
 	 * use to return Primitive Type, or String, Or JsonObject or JsonArray
 	 * generated by a ContainerFactory
 	 */
 	public Object parse(String in) throws ParseException {
 		if (pString == null)
-			pString = new JSONParserString(mode);
+			pString = limit(new JSONParserString(mode));
 		return pString.parse(in);
 	}
 
@@ -147,13 +189,13 @@ public class JSONParser {
 	 */
 	public Object parse(String in, ContainerFactory containerFactory) throws ParseException {
 		if (pString == null)
-			pString = new JSONParserString(mode);
+			pString = limit(new JSONParserString(mode));
 		return pString.parse(in, containerFactory);
 	}
 
 	public Object parse(String in, ContainerFactory containerFactory, ContentHandler handler) throws ParseException {
 		if (pString == null)
-			pString = new JSONParserString(mode);
+			pString = limit(new JSONParserString(mode));
 		return pString.parse(in, containerFactory, handler);
 	}
 
@@ -163,7 +205,7 @@ public class JSONParser {
 	 */
 	public Object parse(byte[] in) throws ParseException {
 		if (pBytes == null)
-			pBytes = new JSONParserByteArray(mode);
+			pBytes = limit(new JSONParserByteArray(mode));
 		return pBytes.parse(in);
 	}
 
@@ -173,32 +215,32 @@ public class JSONParser {
 	 */
 	public Object parse(byte[] in, ContainerFactory containerFactory) throws ParseException {
 		if (pBytes == null)
-			pBytes = new JSONParserByteArray(mode);
+			pBytes = limit(new JSONParserByteArray(mode));
 		return pBytes.parse(in, containerFactory);
 	}
 
 	public Object parse(byte[] in, ContainerFactory containerFactory, ContentHandler handler) throws ParseException {
 		if (pBytes == null)
-			pBytes = new JSONParserByteArray(mode);
+			pBytes = limit(new JSONParserByteArray(mode));
 		return pBytes.parse(in, containerFactory, handler);
 	}
 
 	public Object parse(byte[] in, int offset, int length) throws ParseException {
 		if (pBytes == null)
-			pBytes = new JSONParserByteArray(mode);
+			pBytes = limit(new JSONParserByteArray(mode));
 		return pBytes.parse(in, offset, length, ContainerFactory.FACTORY_SIMPLE, ContentHandlerDumy.HANDLER);
 	}
 
 	public Object parse(byte[] in, int offset, int length, ContainerFactory containerFactory) throws ParseException {
 		if (pBytes == null)
-			pBytes = new JSONParserByteArray(mode);
+			pBytes = limit(new JSONParserByteArray(mode));
 		return pBytes.parse(in, offset, length, containerFactory, ContentHandlerDumy.HANDLER);
 	}
 	
 	public Object parse(byte[] in, int offset, int length, ContainerFactory containerFactory, ContentHandler handler)
 			throws ParseException {
 		if (pBytes == null)
-			pBytes = new JSONParserByteArray(mode);
+			pBytes = limit(new JSONParserByteArray(mode));
 		return pBytes.parse(in, offset, length, containerFactory, handler);
 	}
 
@@ -208,7 +250,7 @@ public class JSONParser {
 	 */
 	public Object parse(Reader in) throws ParseException {
 		if (pStream == null)
-			pStream = new JSONParserReader(mode);
+			pStream = limit(new JSONParserReader(mode));
 		return pStream.parse(in);
 	}
 
@@ -218,7 +260,7 @@ public class JSONParser {
 	 */
 	public Object parse(Reader in, ContainerFactory containerFactory) throws ParseException {
 		if (pStream == null)
-			pStream = new JSONParserReader(mode);
+			pStream = limit(new JSONParserReader(mode));
 		return pStream.parse(in, containerFactory);
 	}
 
@@ -228,7 +270,7 @@ public class JSONParser {
 	 */
 	public Object parse(Reader in, ContainerFactory containerFactory, ContentHandler handler) throws ParseException {
 		if (pStream == null)
-			pStream = new JSONParserReader(mode);
+			pStream = limit(new JSONParserReader(mode));
 		return pStream.parse(in, containerFactory, handler);
 	}
 
@@ -238,7 +280,7 @@ public class JSONParser {
 	 */
 	public Object parse(InputStream in) throws ParseException, UnsupportedEncodingException  {
 		if (pSBintream == null)
-			pSBintream = new JSONParserInputStream(mode);
+			pSBintream = limit(new JSONParserInputStream(mode));
 		return pSBintream.parse(in);
 	}
 
@@ -248,7 +290,7 @@ public class JSONParser {
 	 */
 	public Object parse(InputStream in, ContainerFactory containerFactory) throws ParseException, UnsupportedEncodingException  {
 		if (pSBintream == null)
-			pSBintream = new JSONParserInputStream(mode);
+			pSBintream = limit(new JSONParserInputStream(mode));
 		return pSBintream.parse(in, containerFactory);
 	}
 
@@ -259,7 +301,7 @@ public class JSONParser {
 	public Object parse(InputStream in, ContainerFactory containerFactory, ContentHandler handler)
 			throws ParseException, UnsupportedEncodingException  {
 		if (pSBintream == null)
-			pSBintream = new JSONParserInputStream(mode);
+			pSBintream = limit(new JSONParserInputStream(mode));
 		return pSBintream.parse(in, containerFactory, handler);
 	}
 
@@ -15,6 +15,7 @@ package net.minidev.json.parser;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+import static net.minidev.json.parser.ParseException.ERROR_LIMIT_EXCEEDED;
 import static net.minidev.json.parser.ParseException.ERROR_UNEXPECTED_CHAR;
 import static net.minidev.json.parser.ParseException.ERROR_UNEXPECTED_DUPLICATE_KEY;
 import static net.minidev.json.parser.ParseException.ERROR_UNEXPECTED_EOF;
@@ -28,6 +29,8 @@ import java.math.BigInteger;
 import java.util.List;
 import java.util.Map;
 
+import net.minidev.json.LazyNumber;
+
 /**
  * JSONParserBase is the common code between {@link JSONParserString} and
  * {@link JSONParserReader}
@@ -68,6 +71,15 @@ abstract class JSONParserBase {
 	protected String xs;
 	protected int pos;
 
+	/*
+	 * Limits, see setLimits()
+	 */
+	protected int maxLength = Integer.MAX_VALUE;
+	protected int maxDepth = Integer.MAX_VALUE;
+	protected int maxStringLength = Integer.MAX_VALUE;
+	protected int maxMembers = Integer.MAX_VALUE;
+	protected int depth;
+
 	/*
 	 * Parsing flags
 	 */
@@ -81,6 +93,7 @@ abstract class JSONParserBase {
 	protected final boolean ignoreControlChar;
 	protected final boolean useHiPrecisionFloat;
 	protected final boolean useIntegerStorage;
+	protected final boolean useLazyFloat;
 
 	public JSONParserBase(int permissiveMode) {
 		this.acceptNaN = (permissiveMode & JSONParser.ACCEPT_NAN) > 0;
@@ -91,10 +104,50 @@ abstract class JSONParserBase {
 		this.acceptLeadinZero = (permissiveMode & JSONParser.ACCEPT_LEADING_ZERO) > 0;
 		this.acceptUselessComma = (permissiveMode & JSONParser.ACCEPT_USELESS_COMMA) > 0;
 		this.useHiPrecisionFloat = (permissiveMode & JSONParser.USE_HI_PRECISION_FLOAT) > 0;
+		this.useLazyFloat = (permissiveMode & JSONParser.USE_LAZY_FLOAT) > 0;
 		this.checkTaillingData = (permissiveMode & (JSONParser.ACCEPT_TAILLING_DATA | JSONParser.ACCEPT_TAILLING_SPACE)) != (JSONParser.ACCEPT_TAILLING_DATA | JSONParser.ACCEPT_TAILLING_SPACE);
 		this.checkTaillingSpace = (permissiveMode & JSONParser.ACCEPT_TAILLING_SPACE) == 0;
 	}
 
+	/**
+	 * Bound the resources a single document may use. Exceeding any of them
+	 * fails the parse with ERROR_LIMIT_EXCEEDED, before the offending value
+	 * is built.
+	 * 
+	 * @param maxLength max document length in chars, checked up front for
+	 *        in-memory input and while reading for streams
+	 * @param maxDepth max nesting of objects and arrays
+	 * @param maxStringLength max length of a string or key once unescaped,
+	 *        the same whatever the input, or of a number
+	 * @param maxMembers max members of an object, or elements of an array
+	 */
+	public void setLimits(int maxLength, int maxDepth, int maxStringLength, int maxMembers) {
+		this.maxLength = maxLength;
+		this.maxDepth = maxDepth;
+		this.maxStringLength = maxStringLength;
+		this.maxMembers = maxMembers;
+	}
+
+	protected void checkLength(int len) throws ParseException {
+		if (len > maxLength)
+			throw new ParseException(0, ERROR_LIMIT_EXCEEDED, "document length " + len + " > " + maxLength);
+	}
+
+	protected void checkStringLength(int len) throws ParseException {
+		if (len > maxStringLength)
+			throw new ParseException(pos, ERROR_LIMIT_EXCEEDED, "value length " + len + " > " + maxStringLength);
+	}
+
+	private void enter() throws ParseException {
+		if (++depth > maxDepth)
+			throw new ParseException(pos, ERROR_LIMIT_EXCEEDED, "depth > " + maxDepth);
+	}
+
+	private void checkMembers(int count) throws ParseException {
+		if (count > maxMembers)
+			throw new ParseException(pos, ERROR_LIMIT_EXCEEDED, "members > " + maxMembers);
+	}
+
 	public void checkControleChar() throws ParseException {
 		if (ignoreControlChar)
 			return;
@@ -132,8 +185,11 @@ abstract class JSONParserBase {
 	}
 
 	protected Number extractFloat() throws ParseException {
+		checkStringLength(xs.length());
 		if (!acceptLeadinZero)
 			checkLeadinZero();
+		if (useLazyFloat)
+			return new LazyNumber(xs);
 		if (!useHiPrecisionFloat)
 			return Float.parseFloat(xs);
 		if (xs.length() > 18) // follow JSonIJ parsing method
@@ -149,6 +205,7 @@ abstract class JSONParserBase {
 		this.containerFactory = containerFactory;
 		this.handler = handler;
 //		this.pos = -1;
+		this.depth = 0;
 		Object result;
 		try {
 			read();
@@ -162,6 +219,8 @@ abstract class JSONParserBase {
 					throw new ParseException(pos - 1, ERROR_UNEXPECTED_TOKEN, c);
 			}
 		} catch (IOException e) {
+			if (pos >= maxLength)
+				throw new ParseException(pos, ERROR_LIMIT_EXCEEDED, "document length > " + maxLength);
 			throw new ParseException(pos, e);
 		}
 		xs = null;
@@ -174,6 +233,7 @@ abstract class JSONParserBase {
 		int p = 0;
 		// len
 		int l = s.length();
+		checkStringLength(l);
 		// max pos long base 10 len
 		int max = 19;
 		boolean neg;
@@ -240,11 +300,13 @@ abstract class JSONParserBase {
 	abstract protected void read() throws IOException;
 
 	protected List<Object> readArray() throws ParseException, IOException {
-		List<Object> obj = containerFactory.createArrayContainer();
 		if (c != '[')
 			throw new RuntimeException("Internal Error");
+		enter();
+		List<Object> obj = containerFactory.createArrayContainer();
 		read();
 		boolean needData = false;
+		int count = 0;
 		handler.startArray();
 		for (;;) {
 			switch (c) {
@@ -259,6 +321,7 @@ abstract class JSONParserBase {
 					throw new ParseException(pos, ERROR_UNEXPECTED_CHAR, (char) c);
 				read(); /* unstack */
 				handler.endArray();
+				depth--;
 				return obj;
 			case ':':
 			case '}':
@@ -272,6 +335,7 @@ abstract class JSONParserBase {
 			case EOI:
 				throw new ParseException(pos - 1, ERROR_UNEXPECTED_EOF, "EOF");
 			default:
+				checkMembers(++count);
 				obj.add(readMain(stopArray));
 				needData = false;
 				continue;
@@ -316,6 +380,7 @@ abstract class JSONParserBase {
 			case '"':
 			case '\'':
 				readString();
+				checkStringLength(xs.length());
 				handler.primitive(xs);
 				return xs;
 				// string or null
@@ -383,6 +448,7 @@ abstract class JSONParserBase {
 				readNQString(stop);
 				if (!acceptNonQuote)
 					throw new ParseException(pos, ERROR_UNEXPECTED_TOKEN, xs);
+				checkStringLength(xs.length());
 				handler.primitive(xs);
 				return xs;
 			}
@@ -396,12 +462,14 @@ abstract class JSONParserBase {
 	abstract protected Object readNumber(boolean[] stop) throws ParseException, IOException;
 
 	protected Map<String, Object> readObject() throws ParseException, IOException {
-		Map<String, Object> obj = this.containerFactory.createObjectContainer();
 		if (c != '{')
 			throw new RuntimeException("Internal Error");
+		enter();
+		Map<String, Object> obj = this.containerFactory.createObjectContainer();
 		handler.startObject();
 		boolean needData = false;
 		boolean acceptData = true;
+		int count = 0;
 		for (;;) {
 			read();
 			switch (c) {
@@ -420,6 +488,7 @@ abstract class JSONParserBase {
 					throw new ParseException(pos, ERROR_UNEXPECTED_CHAR, (char) c);
 				read(); /* unstack */
 				handler.endObject();
+				depth--;
 				return obj;
 			case ',':
 				if (needData && !acceptUselessComma)
@@ -440,6 +509,8 @@ abstract class JSONParserBase {
 				String key = xs;
 				if (!acceptData)
 					throw new ParseException(pos, ERROR_UNEXPECTED_TOKEN, key);
+				checkStringLength(key.length());
+				checkMembers(++count);
 				handler.startObjectEntry(key);
 				
 				//Skip spaces
@@ -464,6 +535,7 @@ abstract class JSONParserBase {
 				if (c == '}') {
 					read(); /* unstack */
 					handler.endObject();
+					depth--;
 					return obj;
 				}
 				if (c == EOI) // Fixed on 18/10/2011 reported by vladimir
@@ -490,6 +562,8 @@ abstract class JSONParserBase {
 		char sep = c;
 		for (;;) {
 			read();
+			if (sb.p >= maxStringLength)
+				checkStringLength(sb.p + 1);
 			switch (c) {
 			case EOI:
 				throw new ParseException(pos - 1, ERROR_UNEXPECTED_EOF, null);
@@ -50,6 +50,7 @@ class JSONParserByteArray extends JSONParserMemory {
 	 * generated by a ContainerFactory
 	 */
 	public Object parse(byte[] in, ContainerFactory containerFactory, ContentHandler handler) throws ParseException {
+		checkLength(in.length);
 		this.in = in;
 		this.len = in.length;
 		this.pos = -1;
@@ -65,6 +66,7 @@ class JSONParserByteArray extends JSONParserMemory {
 	 */
 	public Object parse(byte[] in, int offset, int length, ContainerFactory containerFactory, ContentHandler handler)
 			throws ParseException {
+		checkLength(length - offset);
 		this.in = in;
 		this.len = length;
 		this.pos = offset - 1;
@@ -76,7 +78,7 @@ class JSONParserByteArray extends JSONParserMemory {
 	}
 
 	protected int indexOf(char c, int pos) {
-		for (int i = pos; pos < len; i++)
+		for (int i = pos; i < len; i++)
 			if (in[i] == (byte) c)
 				return i;
 		return -1;
@@ -120,13 +120,17 @@ abstract class JSONParserMemory extends JSONParserBase {
 		int tmpP = indexOf(c, pos + 1);
 		if (tmpP == -1)
 			throw new ParseException(len, ERROR_UNEXPECTED_EOF, null);
-		extractString(pos + 1, tmpP);
-		if (xs.indexOf('\\') == -1) {
-			checkControleChar();
-			pos = tmpP;
-			read();
-			// handler.primitive(tmp);
-			return;
+		// the raw length is never shorter than the unescaped one, when it is
+		// over the limit let readString2() count the unescaped chars
+		if (tmpP - pos - 1 <= maxStringLength) {
+			extractString(pos + 1, tmpP);
+			if (xs.indexOf('\\') == -1) {
+				checkControleChar();
+				pos = tmpP;
+				read();
+				// handler.primitive(tmp);
+				return;
+			}
 		}
 		sb.clear();
 		readString2();
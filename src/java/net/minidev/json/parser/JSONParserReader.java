@@ -62,9 +62,15 @@ class JSONParserReader extends JSONParserStream {
 
 	protected void read() throws IOException {
 		int i = in.read();
-		c = (i == -1) ? (char) EOI : (char) i;
-		pos++;
-		//
+		if (i == -1) {
+			c = EOI;
+			pos++;
+		} else {
+			c = (char) i;
+			// only count chars read, EOF right after maxLength chars is fine
+			if (++pos >= maxLength)
+				throw new IOException("document too long");
+		}
 	}
 
 	protected void readS() throws IOException {
@@ -74,7 +80,8 @@ class JSONParserReader extends JSONParserStream {
 			c = EOI;
 		} else {
 			c = (char) i;
-			pos++;
+			if (++pos >= maxLength)
+				throw new IOException("document too long");
 		}
 	}
 
@@ -83,6 +90,8 @@ class JSONParserReader extends JSONParserStream {
 		if (i == -1)
 			throw new ParseException(pos - 1, ERROR_UNEXPECTED_EOF, "EOF");
 		c = (char) i;
-		//
+		// counted too, or each member value would get a free char
+		if (++pos >= maxLength)
+			throw new IOException("document too long");
 	}
 }
@@ -50,6 +50,7 @@ class JSONParserString extends JSONParserMemory {
 	 * generated by a ContainerFactory
 	 */
 	public Object parse(String in, ContainerFactory containerFactory, ContentHandler handler) throws ParseException {
+		checkLength(in.length());
 		this.in = in;
 		this.len = in.length();
 		this.pos = -1;
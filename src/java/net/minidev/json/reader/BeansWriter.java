@@ -1,63 +1,124 @@
 package net.minidev.json.reader;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.minidev.json.JSONStyle;
 import net.minidev.json.JSONUtil;
 
+/**
+ * Serialize an arbitrary Object from its non static, non transient, non final
+ * fields, read either directly when public or through their getter.
+ *
+ * The accessors of a class are resolved by reflection once, and kept as
+ * MethodHandles for all following writes.
+ */
 public class BeansWriter implements JsonWriterI<Object> {
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private final ConcurrentHashMap<Class<?>, Accessor[]> cache = new ConcurrentHashMap<Class<?>, Accessor[]>();
+
 	public <E> void writeJSONString(E value, Appendable out, JSONStyle compression) throws IOException {
-		try {
-			Class<?> nextClass = value.getClass();
-			boolean needSep = false;
-			compression.objectStart(out);
-			while (nextClass != Object.class) {
-				Field[] fields = nextClass.getDeclaredFields();
-				for (Field field : fields) {
-					int m = field.getModifiers();
-					if ((m & (Modifier.STATIC | Modifier.TRANSIENT | Modifier.FINAL)) > 0)
-						continue;
-					Object v = null;
+		Accessor[] accessors = getAccessors(value.getClass());
+		boolean needSep = false;
+		compression.objectStart(out);
+		for (Accessor a : accessors) {
+			Object v;
+			try {
+				v = a.getter.invokeExact((Object) value);
+			} catch (Throwable t) {
+				throw new RuntimeException(t);
+			}
+			if (v == null && compression.ignoreNull())
+				continue;
+			if (needSep)
+				compression.objectNext(out);
+			else
+				needSep = true;
+			JsonWriter.writeJSONKV(a.name, v, out, compression);
+		}
+		compression.objectStop(out);
+	}
+
+	private Accessor[] getAccessors(Class<?> clazz) {
+		Accessor[] rv = cache.get(clazz);
+		if (rv == null) {
+			rv = buildAccessors(clazz);
+			Accessor[] old = cache.putIfAbsent(clazz, rv);
+			if (old != null)
+				rv = old;
+		}
+		return rv;
+	}
+
+	private static Accessor[] buildAccessors(Class<?> clazz) {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		List<Accessor> rv = new ArrayList<Accessor>();
+		Class<?> nextClass = clazz;
+		while (nextClass != Object.class && nextClass != null) {
+			for (Field field : nextClass.getDeclaredFields()) {
+				int m = field.getModifiers();
+				if ((m & (Modifier.STATIC | Modifier.TRANSIENT | Modifier.FINAL)) > 0)
+					continue;
+				MethodHandle mh;
+				try {
 					if ((m & Modifier.PUBLIC) > 0) {
-						v = field.get(value);
+						field.setAccessible(true);
+						mh = lookup.unreflectGetter(field);
 					} else {
-						String g = JSONUtil.getGetterName(field.getName());
-						Method mtd = null;
-
-						try {
-							mtd = nextClass.getDeclaredMethod(g);
-						} catch (Exception e) {
-						}
-						if (mtd == null) {
-							Class<?> c2 = field.getType();
-							if (c2 == Boolean.TYPE || c2 == Boolean.class) {
-								g = JSONUtil.getIsName(field.getName());
-								mtd = nextClass.getDeclaredMethod(g);
-							}
-						}
+						Method mtd = getGetter(nextClass, field);
 						if (mtd == null)
 							continue;
-						v = mtd.invoke(value);
+						mtd.setAccessible(true);
+						mh = lookup.unreflect(mtd);
 					}
-					if (v == null && compression.ignoreNull())
-						continue;
-					if (needSep)
-						compression.objectNext(out);
-					else
-						needSep = true;
-					String key = field.getName();
-
-					JsonWriter.writeJSONKV(key, v, out, compression);
-					// compression.objectElmStop(out);
+				} catch (IllegalAccessException e) {
+					throw new RuntimeException(e);
+				} catch (RuntimeException e) {
+					// not accessible, e.g. SecurityException
+					continue;
 				}
-				nextClass = nextClass.getSuperclass();
+				rv.add(new Accessor(field.getName(), mh.asType(GETTER_TYPE)));
 			}
-			compression.objectStop(out);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+			nextClass = nextClass.getSuperclass();
+		}
+		return rv.toArray(new Accessor[rv.size()]);
+	}
+
+	/**
+	 * @return getX(), or isX() for a boolean field, declared by clazz, or null
+	 */
+	private static Method getGetter(Class<?> clazz, Field field) {
+		try {
+			return clazz.getDeclaredMethod(JSONUtil.getGetterName(field.getName()));
+		} catch (NoSuchMethodException e) {
+		}
+		Class<?> c2 = field.getType();
+		if (c2 == Boolean.TYPE || c2 == Boolean.class) {
+			try {
+				return clazz.getDeclaredMethod(JSONUtil.getIsName(field.getName()));
+			} catch (NoSuchMethodException e) {
+			}
+		}
+		return null;
+	}
+
+	private static class Accessor {
+		final String name;
+		/** (Object)Object */
+		final MethodHandle getter;
+
+		Accessor(String name, MethodHandle getter) {
+			this.name = name;
+			this.getter = getter;
 		}
 	}
 }
@@ -13,6 +13,7 @@ import net.minidev.json.JSONStreamAware;
 import net.minidev.json.JSONStreamAwareEx;
 import net.minidev.json.JSONStyle;
 import net.minidev.json.JSONValue;
+import net.minidev.json.LazyNumber;
 
 public class JsonWriter {
 	private ConcurrentHashMap<Class<?>, JsonWriterI<?>> data;
@@ -175,6 +176,15 @@ public class JsonWriter {
 		}
 	};
 	
+	/**
+	 * Integral Number Writer, writes digits without a temporary String
+	 */
+	final static public JsonWriterI<Number> longWriter = new JsonWriterI<Number>() {
+		public <E extends Number> void writeJSONString(E value, Appendable out, JSONStyle compression) throws IOException {
+			NumberWriter.writeLong(value.longValue(), out);
+		}
+	};
+
 	public void init() {
 		registerWriter(new JsonWriterI<String>() {
 			public void writeJSONString(String value, Appendable out, JSONStyle compression) throws IOException {
@@ -187,7 +197,7 @@ public class JsonWriter {
 				if (value.isInfinite())
 					out.append("null");
 				else
-					out.append(value.toString());
+					NumberWriter.writeDouble(value.doubleValue(), out);
 			}
 		}, Double.class);
 
@@ -208,7 +218,8 @@ public class JsonWriter {
 			}
 		}, Float.class);
 
-		registerWriter(toStringWriter, Integer.class, Long.class, Byte.class, Short.class, BigInteger.class, BigDecimal.class);
+		registerWriter(longWriter, Integer.class, Long.class, Byte.class, Short.class);
+		registerWriter(toStringWriter, BigInteger.class, BigDecimal.class, LazyNumber.class);
 		registerWriter(toStringWriter, Boolean.class);
 
 		/**
@@ -224,7 +235,7 @@ public class JsonWriter {
 						compression.objectNext(out);
 					else
 						needSep = true;
-					out.append(Integer.toString(b));
+					NumberWriter.writeLong(b, out);
 				}
 				compression.arrayStop(out);
 			}
@@ -239,7 +250,7 @@ public class JsonWriter {
 						compression.objectNext(out);
 					else
 						needSep = true;
-					out.append(Short.toString(b));
+					NumberWriter.writeLong(b, out);
 				}
 				compression.arrayStop(out);
 			}
@@ -254,7 +265,7 @@ public class JsonWriter {
 						compression.objectNext(out);
 					else
 						needSep = true;
-					out.append(Long.toString(b));
+					NumberWriter.writeLong(b, out);
 				}
 				compression.arrayStop(out);
 			}
@@ -284,7 +295,7 @@ public class JsonWriter {
 						compression.objectNext(out);
 					else
 						needSep = true;
-					out.append(Double.toString(b));
+					NumberWriter.writeDouble(b, out);
 				}
 				compression.arrayStop(out);
 			}
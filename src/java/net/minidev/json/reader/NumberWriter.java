@@ -0,0 +1,327 @@
+package net.minidev.json.reader;
+
+/*
+ *    Copyright 2011 JSON-SMART authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import java.io.IOException;
+import java.math.BigInteger;
+
+/**
+ * Writes numbers digit by digit into an Appendable, without building a
+ * temporary String for every value.
+ *
+ * Doubles are written with the shortest decimal representation that parses
+ * back to the same value (Ryu, Ulf Adams, PLDI 2018), laid out like
+ * Double.toString(): plain notation for 10^-3 &lt;= |d| &lt; 10^7, else
+ * computerized scientific notation.
+ */
+public final class NumberWriter {
+	private static final String LONG_MIN = "-9223372036854775808";
+
+	private static final long[] POW10 = new long[19];
+
+	private static final int POW5_INV_BITCOUNT = 125;
+	private static final int POW5_BITCOUNT = 125;
+	private static final int POW5_INV_TABLE_SIZE = 342;
+	private static final int POW5_TABLE_SIZE = 326;
+
+	/**
+	 * 125 bit values split in low / high 64 bit words
+	 */
+	private static final long[] POW5_INV_SPLIT_LO = new long[POW5_INV_TABLE_SIZE];
+	private static final long[] POW5_INV_SPLIT_HI = new long[POW5_INV_TABLE_SIZE];
+	private static final long[] POW5_SPLIT_LO = new long[POW5_TABLE_SIZE];
+	private static final long[] POW5_SPLIT_HI = new long[POW5_TABLE_SIZE];
+
+	static {
+		long p = 1;
+		for (int i = 0; i < POW10.length; i++) {
+			POW10[i] = p;
+			p *= 10;
+		}
+		BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		BigInteger five = BigInteger.valueOf(5);
+		for (int i = 0; i < POW5_TABLE_SIZE; i++) {
+			BigInteger pow5 = five.pow(i);
+			int shift = pow5.bitLength() - POW5_BITCOUNT;
+			BigInteger v = shift >= 0 ? pow5.shiftRight(shift) : pow5.shiftLeft(-shift);
+			POW5_SPLIT_LO[i] = v.and(mask).longValue();
+			POW5_SPLIT_HI[i] = v.shiftRight(64).longValue();
+		}
+		for (int i = 0; i < POW5_INV_TABLE_SIZE; i++) {
+			BigInteger pow5 = five.pow(i);
+			int j = pow5.bitLength() - 1 + POW5_INV_BITCOUNT;
+			BigInteger v = BigInteger.ONE.shiftLeft(j).divide(pow5).add(BigInteger.ONE);
+			POW5_INV_SPLIT_LO[i] = v.and(mask).longValue();
+			POW5_INV_SPLIT_HI[i] = v.shiftRight(64).longValue();
+		}
+	}
+
+	private NumberWriter() {
+	}
+
+	/**
+	 * Write the decimal representation of value, same output as
+	 * Long.toString(value).
+	 */
+	public static void writeLong(long value, Appendable out) throws IOException {
+		if (value < 0) {
+			if (value == Long.MIN_VALUE) {
+				out.append(LONG_MIN);
+				return;
+			}
+			out.append('-');
+			value = -value;
+		}
+		writeDigits(value, decimalLength(value), out);
+	}
+
+	/**
+	 * Write the shortest decimal representation of value that round trips,
+	 * in the same layout as Double.toString(value).
+	 */
+	public static void writeDouble(double value, Appendable out) throws IOException {
+		long bits = Double.doubleToRawLongBits(value);
+		int ieeeExponent = (int) ((bits >>> 52) & 0x7ff);
+		long ieeeMantissa = bits & ((1L << 52) - 1);
+		if (ieeeExponent == 0x7ff) {
+			if (ieeeMantissa != 0)
+				out.append("NaN");
+			else
+				out.append(bits < 0 ? "-Infinity" : "Infinity");
+			return;
+		}
+		if (bits < 0)
+			out.append('-');
+		if (ieeeExponent == 0 && ieeeMantissa == 0) {
+			out.append("0.0");
+			return;
+		}
+
+		int e2;
+		long m2;
+		if (ieeeExponent == 0) {
+			e2 = 1 - 1023 - 52 - 2;
+			m2 = ieeeMantissa;
+		} else {
+			e2 = ieeeExponent - 1023 - 52 - 2;
+			m2 = (1L << 52) | ieeeMantissa;
+		}
+		boolean acceptBounds = (m2 & 1) == 0;
+
+		// Step 2: Determine the interval of legal decimal representations.
+		long mv = 4 * m2;
+		int mmShift = (ieeeMantissa != 0 || ieeeExponent <= 1) ? 1 : 0;
+		long mp = mv + 2;
+		long mm = mv - 1 - mmShift;
+
+		// Step 3: Convert to a decimal power base using 128-bit arithmetic.
+		long vr, vp, vm;
+		int e10;
+		boolean vmIsTrailingZeros = false;
+		boolean vrIsTrailingZeros = false;
+		if (e2 >= 0) {
+			int q = log10Pow2(e2) - (e2 > 3 ? 1 : 0);
+			e10 = q;
+			int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+			int i = -e2 + q + k;
+			long lo = POW5_INV_SPLIT_LO[q];
+			long hi = POW5_INV_SPLIT_HI[q];
+			vr = mulShift(mv, lo, hi, i);
+			vp = mulShift(mp, lo, hi, i);
+			vm = mulShift(mm, lo, hi, i);
+			if (q <= 21) {
+				// Only one of mp, mv, and mm can be a multiple of 5, if any.
+				if (mv % 5 == 0)
+					vrIsTrailingZeros = multipleOfPowerOf5(mv, q);
+				else if (acceptBounds)
+					vmIsTrailingZeros = multipleOfPowerOf5(mm, q);
+				else if (multipleOfPowerOf5(mp, q))
+					vp--;
+			}
+		} else {
+			int q = log10Pow5(-e2) - (-e2 > 1 ? 1 : 0);
+			e10 = q + e2;
+			int i = -e2 - q;
+			int k = pow5bits(i) - POW5_BITCOUNT;
+			int j = q - k;
+			long lo = POW5_SPLIT_LO[i];
+			long hi = POW5_SPLIT_HI[i];
+			vr = mulShift(mv, lo, hi, j);
+			vp = mulShift(mp, lo, hi, j);
+			vm = mulShift(mm, lo, hi, j);
+			if (q <= 1) {
+				// mv = 4 * m2 always has at least two trailing 0 bits.
+				vrIsTrailingZeros = true;
+				if (acceptBounds)
+					vmIsTrailingZeros = mmShift == 1;
+				else
+					vp--;
+			} else if (q < 63) {
+				vrIsTrailingZeros = (mv & ((1L << q) - 1)) == 0;
+			}
+		}
+
+		// Step 4: Find the shortest decimal representation in the interval.
+		int removed = 0;
+		int lastRemovedDigit = 0;
+		long output;
+		if (vmIsTrailingZeros || vrIsTrailingZeros) {
+			while (vp / 10 > vm / 10) {
+				vmIsTrailingZeros &= vm % 10 == 0;
+				vrIsTrailingZeros &= lastRemovedDigit == 0;
+				lastRemovedDigit = (int) (vr % 10);
+				vr /= 10;
+				vp /= 10;
+				vm /= 10;
+				removed++;
+			}
+			if (vmIsTrailingZeros) {
+				while (vm % 10 == 0) {
+					vrIsTrailingZeros &= lastRemovedDigit == 0;
+					lastRemovedDigit = (int) (vr % 10);
+					vr /= 10;
+					vp /= 10;
+					vm /= 10;
+					removed++;
+				}
+			}
+			if (vrIsTrailingZeros && lastRemovedDigit == 5 && vr % 2 == 0) {
+				// Round even if the exact number is .....50..0.
+				lastRemovedDigit = 4;
+			}
+			output = vr + (((vr == vm && (!acceptBounds || !vmIsTrailingZeros)) || lastRemovedDigit >= 5) ? 1 : 0);
+		} else {
+			boolean roundUp = false;
+			while (vp / 10 > vm / 10) {
+				roundUp = vr % 10 >= 5;
+				vr /= 10;
+				vp /= 10;
+				vm /= 10;
+				removed++;
+			}
+			output = vr + ((vr == vm || roundUp) ? 1 : 0);
+		}
+		int exp = e10 + removed;
+
+		// Step 5: Print the decimal representation.
+		int olength = decimalLength(output);
+		int sciExp = exp + olength - 1;
+		if (sciExp >= -3 && sciExp < 7) {
+			if (sciExp >= 0) {
+				int intDigits = sciExp + 1;
+				if (olength <= intDigits) {
+					writeDigits(output, olength, out);
+					for (int i = olength; i < intDigits; i++)
+						out.append('0');
+					out.append(".0");
+				} else {
+					long pow = POW10[olength - intDigits];
+					writeDigits(output / pow, intDigits, out);
+					out.append('.');
+					writeDigits(output % pow, olength - intDigits, out);
+				}
+			} else {
+				out.append("0.");
+				for (int i = -1; i > sciExp; i--)
+					out.append('0');
+				writeDigits(output, olength, out);
+			}
+		} else {
+			long pow = POW10[olength - 1];
+			out.append((char) ('0' + output / pow));
+			out.append('.');
+			if (olength > 1)
+				writeDigits(output % pow, olength - 1, out);
+			else
+				out.append('0');
+			out.append('E');
+			writeLong(sciExp, out);
+		}
+	}
+
+	/**
+	 * Write exactly len digits of value, left padded with zeros.
+	 */
+	private static void writeDigits(long value, int len, Appendable out) throws IOException {
+		for (int i = len - 1; i >= 0; i--) {
+			long pow = POW10[i];
+			int d = (int) (value / pow);
+			out.append((char) ('0' + d));
+			value -= d * pow;
+		}
+	}
+
+	/**
+	 * @param v a positive value
+	 */
+	private static int decimalLength(long v) {
+		for (int i = 1; i < POW10.length; i++) {
+			if (v < POW10[i])
+				return i;
+		}
+		return 19;
+	}
+
+	private static int pow5bits(int e) {
+		return ((e * 1217359) >>> 19) + 1;
+	}
+
+	private static int log10Pow2(int e) {
+		return (e * 78913) >>> 18;
+	}
+
+	private static int log10Pow5(int e) {
+		return (e * 732923) >>> 20;
+	}
+
+	private static boolean multipleOfPowerOf5(long value, int p) {
+		int count = 0;
+		while (value > 0 && value % 5 == 0) {
+			value /= 5;
+			count++;
+		}
+		return count >= p;
+	}
+
+	/**
+	 * @return (m * (hi:lo)) &gt;&gt; j, with m &lt; 2^55 and j &gt;= 64
+	 */
+	private static long mulShift(long m, long lo, long hi, int j) {
+		long high1 = unsignedMultiplyHigh(m, lo);
+		long low2 = m * hi;
+		long high2 = unsignedMultiplyHigh(m, hi);
+		long sumLo = low2 + high1;
+		long sumHi = high2 + ((sumLo + Long.MIN_VALUE) < (low2 + Long.MIN_VALUE) ? 1 : 0);
+		int s = j - 64;
+		if (s == 0)
+			return sumLo;
+		if (s >= 64)
+			return sumHi >>> (s - 64);
+		return (sumLo >>> s) | (sumHi << (64 - s));
+	}
+
+	private static long unsignedMultiplyHigh(long x, long y) {
+		long x0 = x & 0xffffffffL;
+		long x1 = x >>> 32;
+		long y0 = y & 0xffffffffL;
+		long y1 = y >>> 32;
+		long w0 = x0 * y0;
+		long t = x1 * y0 + (w0 >>> 32);
+		long w1 = (t & 0xffffffffL) + x0 * y1;
+		long w2 = t >>> 32;
+		return x1 * y1 + w2 + (w1 >>> 32);
+	}
+}